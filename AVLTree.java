@@ -14,6 +14,12 @@ class AVLTree {
         Node right;
         int height;
 
+        // Head of the ETA nodes the TimingWheel has parked on this node after they became due
+        ETATree.Node parked;
+
+        // Head of the ETA nodes referring to this node, linked through their nextReferrer
+        ETATree.Node referrers;
+
         /**
          * Constructs a new Node with the specified Order.
          * @param order The Order to be stored in the node.
@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-width binary encoding of the Gator Delivery commands.
+ * Every command is one record of five big-endian ints: the opcode followed by
+ * four arguments, unused arguments being zero. A QUIT record ends the stream.
+ * A line that is not a valid command becomes an INVALID record whose first argument
+ * is the length of its UTF-8 error message, followed by the message padded to whole
+ * records, so it produces the same output as on the text path.
+ */
+class BinaryCommands {
+
+    static final int RECORD_SIZE = 4 * (1 + Command.MAX_ARGS);
+
+    /** Size of the blocks read from and written to the channels, a whole number of records. */
+    static final int BLOCK_SIZE = RECORD_SIZE * 52428;
+
+    /**
+     * Converts a command file from the text format to the binary format.
+     * Reading stops at Quit(), like the text ingest path.
+     * @throws IOException If the files cannot be accessed, the binary file is the text file,
+     * or an error message does not fit in a block.
+     */
+    static void convert(String textFilename, String binaryFilename) throws IOException {
+        Path textPath = Paths.get(textFilename).toAbsolutePath().normalize();
+        if (textPath.equals(Paths.get(binaryFilename).toAbsolutePath().normalize())) {
+            throw new IOException("Output file " + binaryFilename + " would overwrite the input file");
+        }
+
+        try (
+            BufferedReader reader = new BufferedReader(new FileReader(textFilename));
+            FileChannel channel = FileChannel.open(Paths.get(binaryFilename), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            Command command = new Command();
+            String line;
+            int lineNumber = 0;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    command.opcode = Command.QUIT;
+                } else {
+                    command.parse(line.trim());
+                }
+
+                int size = recordSize(command);
+                if (size > BLOCK_SIZE) {
+                    throw new IOException("Line " + lineNumber + " cannot be encoded: " + line);
+                }
+                if (buffer.remaining() < size) {
+                    flush(channel, buffer);
+                }
+                encode(command, buffer);
+            } while (command.opcode != Command.QUIT);
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Streams the commands of a binary file to the given consumer, in large blocks.
+     * The same Command object is reused for every record. Reading stops at the QUIT record.
+     */
+    static void read(String binaryFilename, Consumer<Command> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(binaryFilename), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            Command command = new Command();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    // Wait for the rest of an INVALID record's message
+                    if (buffer.getInt(buffer.position()) == Command.INVALID
+                            && buffer.remaining() < RECORD_SIZE + padded(buffer.getInt(buffer.position() + 4))) {
+                        break;
+                    }
+                    decode(buffer, command);
+                    if (command.opcode == Command.QUIT) return;
+                    consumer.accept(command);
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    static void encode(Command command, ByteBuffer buffer) {
+        if (command.opcode == Command.INVALID) {
+            byte[] message = command.message.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(Command.INVALID);
+            buffer.putInt(message.length);
+            for (int i = 1; i < Command.MAX_ARGS; i++) {
+                buffer.putInt(0);
+            }
+            buffer.put(message);
+            for (int i = message.length; i < padded(message.length); i++) {
+                buffer.put((byte) 0);
+            }
+            return;
+        }
+
+        buffer.putInt(command.opcode);
+        int arguments = argumentCount(command.opcode);
+        for (int i = 0; i < Command.MAX_ARGS; i++) {
+            buffer.putInt(i < arguments ? command.args[i] : 0);
+        }
+    }
+
+    static void decode(ByteBuffer buffer, Command command) {
+        command.opcode = buffer.getInt();
+        for (int i = 0; i < Command.MAX_ARGS; i++) {
+            command.args[i] = buffer.getInt();
+        }
+
+        command.message = null;
+        if (command.opcode == Command.INVALID) {
+            byte[] message = new byte[command.args[0]];
+            buffer.get(message);
+            buffer.position(buffer.position() + padded(message.length) - message.length);
+            command.message = new String(message, StandardCharsets.UTF_8);
+        }
+    }
+
+    //This method returns the number of bytes the given command takes once encoded.
+    static int recordSize(Command command) {
+        if (command.opcode == Command.INVALID) {
+            return RECORD_SIZE + padded(command.message.getBytes(StandardCharsets.UTF_8).length);
+        }
+        return RECORD_SIZE;
+    }
+
+    //This method rounds a message length up to a whole number of records.
+    static int padded(int length) {
+        return (length + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    //This method returns the number of arguments carried by the given opcode.
+    static int argumentCount(int opcode) {
+        switch (opcode) {
+            case Command.CREATE_ORDER:
+            case Command.AT: return 4;
+            case Command.UPDATE_TIME: return 3;
+            case Command.CANCEL_ORDER:
+            case Command.PRINT_RANGE:
+            case Command.COUNT_RANGE: return 2;
+            case Command.GET_RANK_OF_ORDER:
+            case Command.PRINT_ORDER: return 1;
+            default: return 0;
+        }
+    }
+
+    static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
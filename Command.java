@@ -0,0 +1,146 @@
+/**
+ * Represents a parsed command of the Gator Delivery system.
+ * A command is an opcode with up to four int arguments, which is also
+ * its fixed-width binary encoding (see BinaryCommands).
+ */
+class Command {
+
+    // Opcodes of the commands
+    static final int INVALID = 0;
+    static final int CREATE_ORDER = 1;
+    static final int CANCEL_ORDER = 2;
+    static final int UPDATE_TIME = 3;
+    static final int GET_RANK_OF_ORDER = 4;
+    static final int PRINT_ORDER = 5;
+    static final int PRINT_RANGE = 6;
+    static final int CACHE_STATS = 7;
+    static final int QUIT = 8;
+    static final int BEGIN_BATCH = 9;
+    static final int END_BATCH = 10;
+    static final int AT = 11; // Arguments: time, opcode of the query, and the query's two arguments
+    static final int COUNT_RANGE = 12;
+    static final int MIN_ETA = 13;
+    static final int MAX_ETA = 14;
+
+    static final int MAX_ARGS = 4;
+
+    int opcode;
+    int[] args = new int[MAX_ARGS];
+    String message; // Output line of an invalid command
+
+    /**
+     * Parses a line of the text format into this command.
+     * @param command The trimmed command line, e.g. "createOrder(1001, 1, 100, 4)".
+     * @return This command.
+     */
+    Command parse(String command) {
+        opcode = INVALID;
+        message = null;
+
+        if (command.equals("Quit()")) {
+            opcode = QUIT;
+            return this;
+        }
+
+        if (command.startsWith("at(")) {
+            return parseAt(command);
+        }
+
+        String[] tokens = command.split("\\(|,|\\)");
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokens[i].trim(); // Trim each token
+        }
+        switch (tokens[0]) {
+            case "print":
+                if (tokens.length == 2) {
+                    set(PRINT_ORDER, tokens);
+                } else if (tokens.length == 3) {
+                    set(PRINT_RANGE, tokens);
+                } else {
+                    message = "Invalid order command.";
+                }
+                break;
+            case "getRankOfOrder":
+                if (tokens.length == 2) {
+                    set(GET_RANK_OF_ORDER, tokens);
+                } else {
+                    message = "Invalid getRankOfOrder command.";
+                }
+                break;
+            case "createOrder":
+                if (tokens.length == 5) {
+                    set(CREATE_ORDER, tokens);
+                } else {
+                    message = "Invalid createOrder command.";
+                }
+                break;
+            case "cancelOrder":
+                if (tokens.length == 3) {
+                    set(CANCEL_ORDER, tokens);
+                } else {
+                    message = "Invalid cancelOrder command.";
+                }
+                break;
+            case "updateTime":
+                if (tokens.length == 4) {
+                    set(UPDATE_TIME, tokens);
+                } else {
+                    message = "Invalid updateTime command.";
+                }
+                break;
+            case "count":
+                if (tokens.length == 3) {
+                    set(COUNT_RANGE, tokens);
+                } else {
+                    message = "Invalid count command.";
+                }
+                break;
+            case "minEta":
+                opcode = MIN_ETA;
+                break;
+            case "maxEta":
+                opcode = MAX_ETA;
+                break;
+            case "cacheStats":
+                opcode = CACHE_STATS;
+                break;
+            case "batch":
+                opcode = BEGIN_BATCH;
+                break;
+            case "endBatch":
+                opcode = END_BATCH;
+                break;
+            default:
+                message = "Invalid command: " + command;
+                break;
+        }
+        return this;
+    }
+
+    //This method parses a query about the past, e.g. "at(30, getRankOfOrder(1004))".
+    Command parseAt(String command) {
+        int comma = command.indexOf(',');
+        if (comma > 0 && command.endsWith(")")) {
+            Command query = new Command().parse(command.substring(comma + 1, command.length() - 1).trim());
+            if (query.opcode == PRINT_ORDER || query.opcode == PRINT_RANGE || query.opcode == GET_RANK_OF_ORDER
+                    || query.opcode == COUNT_RANGE || query.opcode == MIN_ETA || query.opcode == MAX_ETA) {
+                args[0] = Integer.parseInt(command.substring(3, comma).trim());
+                args[1] = query.opcode;
+                args[2] = query.args[0];
+                args[3] = query.args[1];
+                opcode = AT;
+                return this;
+            }
+        }
+        message = "Invalid at command.";
+        return this;
+    }
+
+    //This method sets the opcode and parses the int arguments following the command name.
+    void set(int opcode, String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            args[i - 1] = Integer.parseInt(tokens[i]);
+        }
+        this.opcode = opcode;
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Staged ingest pipeline for the Gator Delivery system.
+ * File reading and command parsing each run on their own thread, while the engine
+ * applies the commands on the calling thread, so it stays the single writer of the
+ * trees. Stages are connected by RingBuffers, which keeps the commands in their
+ * original order. The engine only publishes the numbers of each output line; the
+ * DeliveryEventBus's dispatcher thread formats and writes them, as the last stage.
+ */
+class CommandPipeline {
+
+    static final int COMMAND_CAPACITY = 4096;
+
+    /**
+     * Represents a slot carrying a line of text between two stages. A null value ends the stream.
+     */
+    static class Line {
+        String value;
+    }
+
+    gatorDelivery engine;
+    RingBuffer<Line> lines;
+    RingBuffer<Command> commands;
+
+    // Failures of the reader and parser stages, rethrown by the engine when it reaches them
+    volatile IOException readError;
+    volatile RuntimeException parseError;
+
+    /**
+     * Constructs a pipeline feeding an engine, whose stages wait on each other with the given strategy.
+     */
+    CommandPipeline(gatorDelivery engine, RingBuffer.WaitStrategy waitStrategy) {
+        this.engine = engine;
+        lines = new RingBuffer<>(COMMAND_CAPACITY, Line::new, waitStrategy);
+        commands = new RingBuffer<>(COMMAND_CAPACITY, Command::new, waitStrategy);
+    }
+
+    /**
+     * Processes every command from the reader.
+     * Returns once every command up to Quit() (or the end of the input) has been applied.
+     */
+    void run(BufferedReader reader) throws IOException {
+        start("gator-reader", () -> read(reader));
+        start("gator-parser", this::parse);
+
+        try {
+            while (true) {
+                Command command = commands.take();
+                if (command.opcode == Command.QUIT) {
+                    commands.release();
+                    if (readError == null && parseError == null) {
+                        engine.finishCommands();
+                    }
+                    break;
+                }
+                engine.executeCommand(command);
+                commands.release();
+            }
+        } finally {
+            // Let the reader and parser exit if they are still waiting, e.g. after a failure
+            lines.close();
+            commands.close();
+        }
+
+        if (readError != null) throw readError;
+        if (parseError != null) throw parseError;
+    }
+
+    //This method is the reader stage. It reads the trimmed lines of the input up to Quit().
+    void read(BufferedReader reader) {
+        try {
+            String command;
+            while ((command = reader.readLine()) != null) {
+                command = command.trim();
+                if (command.equals("Quit()"))
+                    break;
+                Line line = lines.claim();
+                if (line == null) return;
+                line.value = command;
+                lines.publish();
+            }
+        } catch (IOException e) {
+            readError = e;
+        }
+        Line line = lines.claim();
+        if (line == null) return;
+        line.value = null;
+        lines.publish();
+    }
+
+    //This method is the parser stage. It parses each line into a preallocated Command.
+    void parse() {
+        while (true) {
+            Line line = lines.take();
+            if (line == null) return; // The engine has stopped
+            String value = line.value;
+            lines.release();
+
+            Command command = commands.claim();
+            if (command == null) return;
+            if (value == null) {
+                command.opcode = Command.QUIT;
+                commands.publish();
+                return;
+            }
+            try {
+                command.parse(value);
+            } catch (RuntimeException e) {
+                // Stop where the sequential path would have failed
+                parseError = e;
+                command.opcode = Command.QUIT;
+                commands.publish();
+                return;
+            }
+            commands.publish();
+        }
+    }
+
+    static Thread start(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Represents something that happened to an order in the Gator Delivery system.
+ * Events are published by the engine through a DeliveryEventBus. They carry the
+ * numbers of the line written to the output file for them, if any, and the line
+ * itself is only formatted by the listeners, on the bus's dispatcher thread.
+ */
+class DeliveryEvent {
+
+    /**
+     * The kinds of events published by the engine.
+     */
+    enum Type {
+        /** An order was created. The time is its ETA. */
+        ORDER_CREATED,
+        /** An order was delivered. The time is its delivery time. */
+        ORDER_DELIVERED,
+        /** An order was canceled. The time is the system time of the cancellation. */
+        ORDER_CANCELLED,
+        /** The ETA of an order was changed by a delivery, cancellation or update. The time is its new ETA. */
+        ETA_CHANGED,
+        /** Any other output, such as query results, ETA reports and error messages. The order id and time are set where the line is about one order. */
+        MESSAGE
+    }
+
+    /**
+     * The output lines an event can carry, and which fields fill them in.
+     */
+    enum Format {
+        /** No output line. */
+        NONE,
+        /** The text, as is. */
+        TEXT,
+        /** An order's details: the order id, value1 (creation time), value2 (value), value3 (delivery time) and the time (ETA). */
+        ORDER,
+        /** An order id that was not found. */
+        ORDER_NOT_FOUND,
+        /** An order id that print(orderId) did not find. */
+        ORDER_WITH_ID_NOT_FOUND,
+        /** An order created with the time as its ETA. */
+        CREATED,
+        /** An order delivered at the time. */
+        DELIVERED,
+        /** The order with id value1 delivered when the order with id value2 was created. */
+        DELIVERED_NEXT,
+        /** An order canceled. */
+        CANCELED,
+        /** An order that cannot be canceled, since it was delivered. */
+        CANNOT_CANCEL,
+        /** An order whose delivery time cannot be updated, since it was delivered. */
+        CANNOT_UPDATE,
+        /** An entry of an ETA report: the order id and the time (ETA). */
+        UPDATED_ETA,
+        /** A new ETA of an order affected by a delivery: the order id and the time (ETA). */
+        ETA_UPDATE,
+        /** The order ids of a range query. */
+        ORDER_IDS,
+        /** The rank of an order: the order id and the time (number of orders before it). */
+        RANK,
+        /** The number of orders in a range, as the time. */
+        COUNT,
+        /** The earliest ETA, as the time. */
+        EARLIEST_ETA,
+        /** The latest ETA, as the time. */
+        LATEST_ETA,
+        /** The cache statistics: value1 (hits) and value2 (misses). */
+        CACHE_STATS
+    }
+
+    Type type;
+    Format format;
+    int orderId;
+    int time;
+    long value1; // Further numbers of the line, depending on the format
+    long value2;
+    long value3;
+    int[] orderIds; // Order ids of an ORDER_IDS line, never changed once published
+    String text; // Text of a TEXT line
+
+    //This method fills in the event. Events are reused, so every field is overwritten.
+    void set(Type type, Format format, int orderId, int time) {
+        this.type = type;
+        this.format = format;
+        this.orderId = orderId;
+        this.time = time;
+        this.value1 = 0;
+        this.value2 = 0;
+        this.value3 = 0;
+        this.orderIds = null;
+        this.text = null;
+    }
+
+    /**
+     * Formats the line written to the output file for this event.
+     * @return The line, or null if the event has none.
+     */
+    String line() {
+        switch (format) {
+            case TEXT:
+                return text;
+            case ORDER:
+                return "[" + orderId + ", " + value1 + ", " + value2 + ", " + value3 + ", " + time + "]";
+            case ORDER_NOT_FOUND:
+                return "Order " + orderId + " not found.";
+            case ORDER_WITH_ID_NOT_FOUND:
+                return "Order with orderId " + orderId + " not found.";
+            case CREATED:
+                return "Order " + orderId + " has been created - ETA: " + time;
+            case DELIVERED:
+                return "Order " + orderId + " has been delivered at time " + time + ".";
+            case DELIVERED_NEXT:
+                return "Order " + value1 + " has been delivered. Order " + value2 + " is now under delivery.";
+            case CANCELED:
+                return "Order " + orderId + " has been canceled.";
+            case CANNOT_CANCEL:
+                return "Cannot cancel. Order " + orderId + " has already been delivered.";
+            case CANNOT_UPDATE:
+                return "Cannot update. Order " + orderId + " has already been delivered.";
+            case UPDATED_ETA:
+                return "[" + orderId + ": " + time + "], ";
+            case ETA_UPDATE:
+                return "Updated ETA for order " + orderId + " to: " + time;
+            case ORDER_IDS:
+                if (orderIds.length == 0) return "There are no orders in that time period";
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < orderIds.length; i++) {
+                    if (i > 0) line.append(", ");
+                    line.append(orderIds[i]);
+                }
+                return line.toString();
+            case RANK:
+                return "Order " + orderId + " will be delivered after " + time + " orders.";
+            case COUNT:
+                return "Orders in that time period: " + time;
+            case EARLIEST_ETA:
+                return "Earliest ETA: " + time;
+            case LATEST_ETA:
+                return "Latest ETA: " + time;
+            case CACHE_STATS:
+                return "Cache hits: " + value1 + ", misses: " + value2;
+            default:
+                return null;
+        }
+    }
+}
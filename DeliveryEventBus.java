@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes the delivery events of the Gator Delivery system to the subscribed listeners.
+ * The engine fills in events on a bounded RingBuffer and returns to the command loop; a
+ * dispatcher thread hands them to the listeners in batches, which also makes it the
+ * output formatting stage. When the listeners fall behind and the queue fills up,
+ * publishing waits for them instead of buffering more.
+ */
+class DeliveryEventBus implements AutoCloseable {
+
+    static final int CAPACITY = 8192;
+
+    /** Maximum number of events handed to the listeners at once. */
+    static final int MAX_BATCH = 256;
+
+    RingBuffer<DeliveryEvent> queue = new RingBuffer<>(CAPACITY, DeliveryEvent::new, RingBuffer.WaitStrategy.PARK);
+    List<DeliveryListener> listeners = new CopyOnWriteArrayList<>();
+    Thread dispatcher;
+
+    // First failure of a listener, rethrown by close(). No more events are dispatched after it.
+    volatile RuntimeException listenerError;
+
+    void subscribe(DeliveryListener listener) {
+        listeners.add(listener);
+    }
+
+    void unsubscribe(DeliveryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the dispatcher thread. Events can only be published while the bus is started.
+     * @return This bus, so it can be opened in a try-with-resources statement.
+     */
+    DeliveryEventBus start() {
+        dispatcher = CommandPipeline.start("gator-events", this::dispatch);
+        return this;
+    }
+
+    /**
+     * Claims the next event for the engine to fill in, waiting for room if the queue is full.
+     * The event is queued for the listeners by publish(). Must only be called from the engine's thread.
+     * @throws IllegalStateException If the bus is not started, since nothing would ever dispatch the event.
+     */
+    DeliveryEvent claim() {
+        if (dispatcher == null) {
+            throw new IllegalStateException("The event bus is not started");
+        }
+        return queue.claim();
+    }
+
+    /**
+     * Queues the event claimed last for the listeners.
+     */
+    void publish() {
+        queue.publish();
+    }
+
+    /**
+     * Waits until every published event has been dispatched and stops the dispatcher thread.
+     */
+    @Override
+    public void close() {
+        if (dispatcher == null) return;
+
+        // A null type ends the stream
+        claim().set(null, DeliveryEvent.Format.NONE, 0, 0);
+        publish();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher = null;
+
+        if (listenerError != null) throw listenerError;
+    }
+
+    //This method is the dispatcher thread. It hands the queued events to the listeners until the end of the stream.
+    void dispatch() {
+        List<DeliveryEvent> batch = new ArrayList<>(MAX_BATCH);
+        List<DeliveryEvent> view = Collections.unmodifiableList(batch);
+        while (true) {
+            batch.clear();
+            int count = queue.takeBatch(batch, MAX_BATCH);
+            boolean end = batch.get(count - 1).type == null;
+            if (end) {
+                batch.remove(count - 1);
+            }
+
+            if (!batch.isEmpty() && listenerError == null) {
+                try {
+                    for (DeliveryListener listener : listeners) {
+                        listener.onEvents(view);
+                    }
+                } catch (RuntimeException e) {
+                    listenerError = e;
+                }
+            }
+
+            queue.release(count);
+            if (end) return;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.List;
+
+/**
+ * Receives the delivery events of the Gator Delivery system from a DeliveryEventBus.
+ */
+interface DeliveryListener {
+
+    /**
+     * Handles the next batch of events, in the order they were published.
+     * Called on the bus's dispatcher thread. The events are reused once this returns,
+     * so a listener must copy whatever it keeps. A slow listener holds up the engine
+     * once the bus's queue is full.
+     */
+    void onEvents(List<DeliveryEvent> events);
+}
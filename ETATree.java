@@ -1,6 +1,9 @@
 /**
  * Tree for managing ETA values
  * associated with orders in the Gator Delivery system.
+ * The nodes are kept in ETA order: a node whose ETA changes is removed and inserted again.
+ * Every node also keeps the count and the earliest and latest ETA of the listed
+ * nodes in its subtree, so windows of ETAs are counted along the paths to their bounds.
  */
 class ETATree {
     
@@ -13,8 +16,26 @@ class ETATree {
         AVLTree.Node avlNode;
         Node left;
         Node right;
+        Node parent;
         int height;
 
+        // Links used by the TimingWheel the node is scheduled in
+        Node wheelPrev;
+        Node wheelNext;
+        int wheelBucket = TimingWheel.UNSCHEDULED;
+
+        // Next ETA node referring to the same AVLTree node
+        Node nextReferrer;
+
+        // Whether print(time1, time2) lists the node when its ETA is in the window, that is, its order is not delivered
+        boolean listed;
+
+        // Aggregates over the listed nodes of the subtree, kept up to date by update and refresh.
+        // The earliest and latest ETA leave out canceled nodes, whose ETA is the Integer.MAX_VALUE marker.
+        int count;
+        int minEta = Integer.MAX_VALUE;
+        int maxEta = Integer.MIN_VALUE;
+
         /**
          * Constructs a new Node with the specified ETA value and AVLNode reference.
          * @param eta The ETA value.
@@ -62,8 +83,12 @@ class ETATree {
         x.right = y;
         y.left = T2;
 
-        y.height = Math.max(height(y.left), height(y.right)) + 1;
-        x.height = Math.max(height(x.left), height(x.right)) + 1;
+        x.parent = y.parent;
+        y.parent = x;
+        if (T2 != null) T2.parent = y;
+
+        update(y);
+        update(x);
 
         return x;
     }
@@ -80,8 +105,12 @@ class ETATree {
         y.left = x;
         x.right = T2;
 
-        x.height = Math.max(height(x.left), height(x.right)) + 1;
-        y.height = Math.max(height(y.left), height(y.right)) + 1;
+        y.parent = x.parent;
+        x.parent = y;
+        if (T2 != null) T2.parent = x;
+
+        update(x);
+        update(y);
 
         return y;
     }
@@ -90,33 +119,208 @@ class ETATree {
      * Inserts a new node with the given ETA and AVLNode references into the tree.
      */
     Node insert(Node node, int eta, AVLTree.Node avlNode) {
-        if (node == null) return new Node(eta, avlNode);
+        return insert(node, new Node(eta, avlNode));
+    }
 
-        if (eta < node.eta)
-            node.left = insert(node.left, eta, avlNode);
-        else
-            node.right = insert(node.right, eta, avlNode);
+    /**
+     * Inserts the given new node into the tree, after the nodes with the same ETA.
+     * @param node The root of the tree.
+     * @param newNode The node to be inserted.
+     * @return The new root node.
+     */
+    Node insert(Node node, Node newNode) {
+        if (node == null) {
+            update(newNode);
+            return newNode;
+        }
 
-        node.height = 1 + Math.max(height(node.left), height(node.right));
+        if (newNode.eta < node.eta) {
+            node.left = insert(node.left, newNode);
+            node.left.parent = node;
+        } else {
+            node.right = insert(node.right, newNode);
+            node.right.parent = node;
+        }
 
-        int balance = balance(node);
+        return rebalance(node);
+    }
 
-        if (balance > 1 && eta < node.left.eta)
-            return rightRotate(node);
+    /**
+     * Removes the given node from the tree and rebalances the nodes above it.
+     * The node keeps its ETA and can be inserted again.
+     */
+    void remove(Node node) {
+        Node replacement;
+        Node lowest; // Lowest node whose subtree has changed
+        if (node.left == null || node.right == null) {
+            replacement = node.left != null ? node.left : node.right;
+            lowest = node.parent;
+        } else {
+            // Move the successor into the node's place
+            replacement = node.right;
+            while (replacement.left != null) replacement = replacement.left;
+            lowest = replacement;
+            if (replacement.parent != node) {
+                lowest = replacement.parent;
+                lowest.left = replacement.right;
+                if (replacement.right != null) replacement.right.parent = lowest;
+                replacement.right = node.right;
+                node.right.parent = replacement;
+            }
+            replacement.left = node.left;
+            node.left.parent = replacement;
+        }
+        replaceChild(node.parent, node, replacement);
 
-        if (balance < -1 && eta > node.right.eta)
-            return leftRotate(node);
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        node.height = 1;
+
+        // Restore the balance and the aggregates up to the root
+        while (lowest != null) {
+            Node parent = lowest.parent;
+            replaceChild(parent, lowest, rebalance(lowest));
+            lowest = parent;
+        }
+    }
 
-        if (balance > 1 && eta > node.left.eta) {
-            node.left = leftRotate(node.left);
+    //This method puts a new child in the place of an old one, or makes it the root if the old one was.
+    void replaceChild(Node parent, Node oldChild, Node newChild) {
+        if (newChild != null) newChild.parent = parent;
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+    }
+
+    /**
+     * Recalculates a node from its children and rotates it if it is out of balance.
+     * @return The node now at the top of the subtree.
+     */
+    Node rebalance(Node node) {
+        update(node);
+
+        int balance = balance(node);
+
+        if (balance > 1) {
+            if (balance(node.left) < 0) node.left = leftRotate(node.left);
             return rightRotate(node);
         }
 
-        if (balance < -1 && eta < node.right.eta) {
-            node.right = rightRotate(node.right);
+        if (balance < -1) {
+            if (balance(node.right) > 0) node.right = rightRotate(node.right);
             return leftRotate(node);
         }
 
         return node;
     }
+
+
+    /**
+     * Recalculates the height and the aggregates of a node from its children.
+     */
+    void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+
+        int count = 0;
+        int minEta = Integer.MAX_VALUE;
+        int maxEta = Integer.MIN_VALUE;
+        if (node.listed) {
+            count = 1;
+            if (node.eta != Integer.MAX_VALUE) {
+                minEta = node.eta;
+                maxEta = node.eta;
+            }
+        }
+        if (node.left != null) {
+            count += node.left.count;
+            minEta = Math.min(minEta, node.left.minEta);
+            maxEta = Math.max(maxEta, node.left.maxEta);
+        }
+        if (node.right != null) {
+            count += node.right.count;
+            minEta = Math.min(minEta, node.right.minEta);
+            maxEta = Math.max(maxEta, node.right.maxEta);
+        }
+        node.count = count;
+        node.minEta = minEta;
+        node.maxEta = maxEta;
+    }
+
+    /**
+     * Recalculates the aggregates of a node and its ancestors after the node's ETA
+     * or listed state has changed.
+     */
+    void refresh(Node node) {
+        for (; node != null; node = node.parent) {
+            update(node);
+        }
+    }
+
+    /**
+     * Counts the listed nodes with an ETA between time1 and time2, inclusive, in O(log n)
+     * time: the nodes before each bound are counted along the path to it.
+     */
+    int count(Node node, int time1, int time2) {
+        if (time1 > time2) return 0;
+        return countBefore(node, time2, true) - countBefore(node, time1, false);
+    }
+
+    /**
+     * Counts the listed nodes with an ETA lower than the given time, or equal to it if inclusive.
+     */
+    int countBefore(Node node, int time, boolean inclusive) {
+        int count = 0;
+        while (node != null) {
+            if (node.eta < time || inclusive && node.eta == time) {
+                // The node and its whole left subtree come before the time
+                if (node.left != null) count += node.left.count;
+                if (node.listed) count++;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compares two nodes of the tree by their position in a pre-order traversal.
+     * @return A negative number if a is visited before b, a positive number if after, zero if they are the same node.
+     */
+    int comparePreorder(Node a, Node b) {
+        if (a == b) return 0;
+
+        int depthA = depth(a);
+        int depthB = depth(b);
+        Node x = a;
+        Node y = b;
+        while (depthA > depthB) { x = x.parent; depthA--; }
+        while (depthB > depthA) { y = y.parent; depthB--; }
+
+        // An ancestor is visited before its descendants
+        if (x == y) return x == a ? -1 : 1;
+
+        while (x.parent != y.parent) {
+            x = x.parent;
+            y = y.parent;
+        }
+        return x.parent.left == x ? -1 : 1;
+    }
+
+    /**
+     * Calculates the depth of a node by following its parent references.
+     */
+    int depth(Node node) {
+        int depth = 0;
+        while (node.parent != null) {
+            node = node.parent;
+            depth++;
+        }
+        return depth;
+    }
 }
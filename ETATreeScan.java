@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Fork-join scan of an ETATree for the bulk operations of the Gator Delivery system.
+ * Collects the order ids of the nodes matching a predicate, in the same pre-order
+ * as the sequential helpers. Subtrees taller than a threshold are split into
+ * parallel tasks and their results are concatenated in order.
+ */
+class ETATreeScan extends RecursiveTask<List<Integer>> {
+
+    /** Subtrees up to this height (at most 4095 nodes) are scanned sequentially. */
+    static final int SEQUENTIAL_HEIGHT = 12;
+
+    static final long serialVersionUID = 1L;
+
+    ETATree.Node node;
+    Predicate<ETATree.Node> matches;
+
+    ETATreeScan(ETATree.Node node, Predicate<ETATree.Node> matches) {
+        this.node = node;
+        this.matches = matches;
+    }
+
+    /**
+     * Tells whether a tree is big enough for the parallel scan to pay off.
+     */
+    static boolean isLarge(ETATree.Node root) {
+        return root != null && root.height > SEQUENTIAL_HEIGHT;
+    }
+
+    /**
+     * Collects the order ids of the matching nodes of the tree, in pre-order.
+     * The predicate is evaluated concurrently and must not modify anything.
+     */
+    static List<Integer> collect(ETATree.Node root, Predicate<ETATree.Node> matches) {
+        return new ETATreeScan(root, matches).invoke();
+    }
+
+    @Override
+    protected List<Integer> compute() {
+        List<Integer> orderIds = new ArrayList<>();
+        if (node == null) return orderIds;
+
+        if (node.height <= SEQUENTIAL_HEIGHT) {
+            scan(node, orderIds);
+            return orderIds;
+        }
+
+        ETATreeScan left = new ETATreeScan(node.left, matches);
+        ETATreeScan right = new ETATreeScan(node.right, matches);
+        right.fork();
+        List<Integer> leftIds = left.compute();
+
+        if (matches.test(node)) {
+            orderIds.add(node.avlNode.order.orderId);
+        }
+        orderIds.addAll(leftIds);
+        orderIds.addAll(right.join());
+        return orderIds;
+    }
+
+    //This method is the sequential pre-order scan of a subtree.
+    void scan(ETATree.Node node, List<Integer> orderIds) {
+        if (node != null) {
+            if (matches.test(node)) {
+                orderIds.add(node.avlNode.order.orderId);
+            }
+            scan(node.left, orderIds);
+            scan(node.right, orderIds);
+        }
+    }
+}
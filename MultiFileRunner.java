@@ -0,0 +1,108 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many command files in one JVM for the Gator Delivery system.
+ * Every file gets its own gatorDelivery engine, so no state is shared between them,
+ * and the files are processed concurrently on a bounded pool of worker threads.
+ * Each output is written next to its input file, as when a single file is processed.
+ */
+class MultiFileRunner {
+
+    int threads;
+
+    // Options every engine is constructed with
+    boolean archive;
+    boolean history;
+    RingBuffer.WaitStrategy pipelineWaitStrategy;
+
+    /**
+     * Constructs a runner.
+     * @param threads The maximum number of files processed at once.
+     */
+    MultiFileRunner(int threads, boolean archive, boolean history, RingBuffer.WaitStrategy pipelineWaitStrategy) {
+        this.threads = threads;
+        this.archive = archive;
+        this.history = history;
+        this.pipelineWaitStrategy = pipelineWaitStrategy;
+    }
+
+    /**
+     * Chooses how many files to process at once when no thread count is given.
+     * Besides its worker, every engine keeps the event bus's dispatcher thread busy, and in
+     * pipelined mode the reader and parser stages too, so the cores are shared between that
+     * many threads per engine. Large ETA scans run on the common fork-join pool on top of these.
+     */
+    static int defaultThreads(boolean pipelined) {
+        int threadsPerEngine = pipelined ? 4 : 2;
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / threadsPerEngine);
+    }
+
+    /**
+     * Expands the given paths into the command files to process. A directory contributes
+     * its .txt and .bin files, sorted by name, skipping output files and text files that
+     * have been converted to a .bin next to them. Other paths are taken as given.
+     */
+    static List<String> inputFiles(List<String> paths) {
+        List<String> inputFiles = new ArrayList<>();
+        for (String path : paths) {
+            File directory = new File(path);
+            if (!directory.isDirectory()) {
+                inputFiles.add(path);
+                continue;
+            }
+
+            File[] files = directory.listFiles();
+            if (files == null) continue;
+            Arrays.sort(files);
+            for (File file : files) {
+                String name = file.getName();
+                if (!file.isFile() || name.endsWith("_output.txt")) continue;
+                if (name.endsWith(".bin")
+                        || name.endsWith(".txt") && !new File(directory, name.replace(".txt", ".bin")).exists()) {
+                    inputFiles.add(file.getPath());
+                }
+            }
+        }
+        return inputFiles;
+    }
+
+    /**
+     * Processes the files and waits for all of them. A file that fails is reported
+     * on standard error and does not stop the others.
+     * @return The number of files that failed.
+     */
+    int run(List<String> inputFiles) {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, inputFiles.size())));
+        List<Future<?>> results = new ArrayList<>();
+        for (String inputFilename : inputFiles) {
+            results.add(workers.submit(() -> {
+                new gatorDelivery(archive, history, pipelineWaitStrategy).run(inputFilename);
+                return null;
+            }));
+        }
+        workers.shutdown();
+
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                System.err.println("Error processing " + inputFiles.get(i) + ": " + e.getCause());
+                failures++;
+            } catch (InterruptedException e) {
+                // Stop waiting and abandon the files not processed yet
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                return failures + results.size() - i;
+            }
+        }
+        return failures;
+    }
+}
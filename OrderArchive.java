@@ -0,0 +1,193 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only archive of orders that have left the delivery queue
+ * (delivered or canceled) in the Gator Delivery system.
+ * Records are delta-encoded as variable-length integers and stored off-heap,
+ * so the full history of retired orders can be kept without growing the heap.
+ * The engine evicts retired orders from its trees; the archive answers print(orderId)
+ * for them and keeps the little calculateETA still needs from them, their finish times.
+ */
+class OrderArchive {
+
+    /** Size of each off-heap chunk the records are appended to. */
+    static final int CHUNK_BITS = 20;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** Number of records per block. Deltas restart at every block boundary. */
+    static final int BLOCK_RECORDS = 64;
+
+    /**
+     * Represents an archived order as it was when it left the queue.
+     */
+    static class Entry {
+        int orderId;
+        int currentSystemTime;
+        int orderValue;
+        int deliveryTime;
+        int eta;
+    }
+
+    List<ByteBuffer> chunks = new ArrayList<>();
+    long position; // Number of bytes written so far
+    int count; // Number of records written so far
+
+    // Sparse block index: where each block starts and which order ids it covers
+    long[] blockOffsets = new long[16];
+    int[] blockMinIds = new int[16];
+    int[] blockMaxIds = new int[16];
+    int blocks;
+
+    // Delta bases of the block currently being written
+    int previousId;
+    int previousTime;
+
+    // Latest finish time (ETA plus delivery time) of the retired orders, by priority. An order is
+    // only kept while it finishes after the current time and no order of higher priority finishes later,
+    // so the finish times decrease as the priority increases.
+    TreeMap<Double, Integer> finishTimes = new TreeMap<>();
+
+    /**
+     * Appends an order to the archive together with the ETA it left the queue with.
+     */
+    void append(Order order, int eta) {
+        if (count % BLOCK_RECORDS == 0) {
+            startBlock();
+        }
+        int block = blocks - 1;
+        blockMinIds[block] = Math.min(blockMinIds[block], order.orderId);
+        blockMaxIds[block] = Math.max(blockMaxIds[block], order.orderId);
+
+        writeVarInt(zigZag(order.orderId - previousId));
+        writeVarInt(zigZag(order.currentSystemTime - previousTime));
+        writeVarInt(zigZag(order.orderValue));
+        writeVarInt(zigZag(order.deliveryTime));
+        writeVarInt(zigZag(eta - order.currentSystemTime));
+
+        previousId = order.orderId;
+        previousTime = order.currentSystemTime;
+        count++;
+    }
+
+    /**
+     * Records when a retired order finishes, for the orders of lower priority whose ETA it holds up.
+     * @param currentSystemTime The current time. Orders finishing by then are forgotten.
+     */
+    void addFinishTime(double priority, int finishTime, int currentSystemTime) {
+        while (!finishTimes.isEmpty() && finishTimes.lastEntry().getValue() <= currentSystemTime) {
+            finishTimes.pollLastEntry();
+        }
+        if (finishTime <= currentSystemTime) return;
+
+        Map.Entry<Double, Integer> later = finishTimes.ceilingEntry(priority);
+        if (later != null && later.getValue() >= finishTime) return;
+
+        // Forget the orders of lower priority that finish earlier
+        Map.Entry<Double, Integer> earlier = finishTimes.floorEntry(priority);
+        while (earlier != null && earlier.getValue() <= finishTime) {
+            finishTimes.remove(earlier.getKey());
+            earlier = finishTimes.lowerEntry(earlier.getKey());
+        }
+        finishTimes.put(priority, finishTime);
+    }
+
+    /**
+     * Finds the latest finish time of the retired orders with a higher priority than the given one.
+     * @return The finish time, or Integer.MIN_VALUE if there is none.
+     */
+    int latestFinishTime(double priority) {
+        Map.Entry<Double, Integer> entry = finishTimes.higherEntry(priority);
+        return entry == null ? Integer.MIN_VALUE : entry.getValue();
+    }
+
+    /**
+     * Looks up the most recently archived record of the given order.
+     * @return The archived entry, or null if the order was never archived.
+     */
+    Entry find(int orderId) {
+        Entry entry = new Entry();
+        for (int block = blocks - 1; block >= 0; block--) {
+            if (orderId < blockMinIds[block] || orderId > blockMaxIds[block]) continue;
+
+            long[] cursor = { blockOffsets[block] };
+            int records = Math.min(BLOCK_RECORDS, count - block * BLOCK_RECORDS);
+            int id = 0, time = 0;
+            boolean found = false;
+            for (int i = 0; i < records; i++) {
+                id += unZigZag(readVarInt(cursor));
+                time += unZigZag(readVarInt(cursor));
+                int value = unZigZag(readVarInt(cursor));
+                int deliveryTime = unZigZag(readVarInt(cursor));
+                int eta = time + unZigZag(readVarInt(cursor));
+                if (id == orderId) {
+                    entry.orderId = id;
+                    entry.currentSystemTime = time;
+                    entry.orderValue = value;
+                    entry.deliveryTime = deliveryTime;
+                    entry.eta = eta;
+                    found = true;
+                }
+            }
+            if (found) return entry;
+        }
+        return null;
+    }
+
+    //This method opens a new block in the index and resets the delta bases.
+    void startBlock() {
+        if (blocks == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+            blockMinIds = Arrays.copyOf(blockMinIds, blocks * 2);
+            blockMaxIds = Arrays.copyOf(blockMaxIds, blocks * 2);
+        }
+        blockOffsets[blocks] = position;
+        blockMinIds[blocks] = Integer.MAX_VALUE;
+        blockMaxIds[blocks] = Integer.MIN_VALUE;
+        blocks++;
+        previousId = 0;
+        previousTime = 0;
+    }
+
+    void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    void writeByte(int b) {
+        int chunk = (int) (position >>> CHUNK_BITS);
+        if (chunk == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+        chunks.get(chunk).put((int) (position & (CHUNK_SIZE - 1)), (byte) b);
+        position++;
+    }
+
+    //This method reads a variable-length integer starting at cursor[0] and advances the cursor past it.
+    int readVarInt(long[] cursor) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            long pos = cursor[0]++;
+            int b = chunks.get((int) (pos >>> CHUNK_BITS)).get((int) (pos & (CHUNK_SIZE - 1)));
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
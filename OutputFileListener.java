@@ -0,0 +1,24 @@
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Formats the output lines of the delivery events and writes them to the output file.
+ */
+class OutputFileListener implements DeliveryListener {
+
+    PrintWriter writer;
+
+    OutputFileListener(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void onEvents(List<DeliveryEvent> events) {
+        for (DeliveryEvent event : events) {
+            String line = event.line();
+            if (line != null) {
+                writer.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache for the results of read-only queries in the Gator Delivery system.
+ * Queries are identified by their opcode and arguments, and results are kept unformatted.
+ * Every entry is tagged with the mutation epoch it was computed in, so bumping the
+ * epoch invalidates all cached results at once without touching the entries.
+ */
+class ResultCache {
+
+    /**
+     * Represents a query: its opcode and arguments.
+     */
+    static class Key {
+        int opcode;
+        int arg1;
+        int arg2;
+
+        Key(int opcode, int arg1, int arg2) {
+            this.opcode = opcode;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return opcode == key.opcode && arg1 == key.arg1 && arg2 == key.arg2;
+        }
+
+        @Override
+        public int hashCode() {
+            return (opcode * 31 + arg1) * 31 + arg2;
+        }
+    }
+
+    /**
+     * Represents a cached query result together with the epoch it belongs to.
+     */
+    static class Entry {
+        long epoch;
+        Object result;
+
+        Entry(long epoch, Object result) {
+            this.epoch = epoch;
+            this.result = result;
+        }
+    }
+
+    int capacity;
+    long epoch; // Global mutation epoch, bumped by every command that changes the trees
+    long hits;
+    long misses;
+    Map<Key, Entry> entries;
+
+    /**
+     * Constructs a new cache holding at most the given number of results.
+     */
+    ResultCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > ResultCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a query if it was computed in the current epoch.
+     * @return The cached result, or null on a miss.
+     */
+    Object get(Key query) {
+        Entry entry = entries.get(query);
+        if (entry != null && entry.epoch == epoch) {
+            hits++;
+            return entry.result;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores the result of a query computed in the current epoch.
+     */
+    void put(Key query, Object result) {
+        entries.put(query, new Entry(epoch, result));
+    }
+
+    /**
+     * Invalidates every cached result. Called whenever the trees are mutated.
+     */
+    void bumpEpoch() {
+        epoch++;
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded single-producer single-consumer ring buffer used to connect the
+ * stages of the Gator Delivery pipeline.
+ * The slots are allocated once up front and reused: the producer claims a slot,
+ * fills it in and publishes it; the consumer takes it, reads it and releases it.
+ * Closing the buffer releases a stage waiting on the other one, which has stopped.
+ */
+class RingBuffer<E> {
+
+    /**
+     * How a stage waits for a free or a published slot.
+     */
+    enum WaitStrategy {
+        /** Spin on the CPU. Lowest latency, but keeps a core busy. */
+        BUSY_SPIN,
+        /** Park the thread for a short while between checks. */
+        PARK
+    }
+
+    static final long PARK_NANOS = 1000;
+
+    E[] slots;
+    int mask;
+    WaitStrategy waitStrategy;
+
+    volatile long published; // Number of slots published by the producer
+    volatile long released; // Number of slots released by the consumer
+    volatile boolean closed;
+
+    // Each side's last read of the other side's counter, to avoid re-reading the volatile
+    long cachedReleased;
+    long cachedPublished;
+
+    /**
+     * Constructs a ring buffer and preallocates its slots.
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param factory Creates the object held by each slot.
+     * @param waitStrategy How the stages wait on each other.
+     */
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = (E[]) new Object[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Waits for a free slot and returns it to the producer to be filled in.
+     * @return The slot, or null if the buffer was closed while waiting.
+     */
+    E claim() {
+        long sequence = published;
+        while (sequence - cachedReleased >= slots.length) {
+            cachedReleased = released;
+            if (sequence - cachedReleased >= slots.length) {
+                if (closed) return null;
+                await();
+            }
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Makes the last claimed slot visible to the consumer.
+     */
+    void publish() {
+        published = published + 1;
+    }
+
+    /**
+     * Waits for a published slot and returns it to the consumer.
+     * @return The slot, or null if the buffer was closed while waiting.
+     */
+    E take() {
+        long sequence = released;
+        while (sequence >= cachedPublished) {
+            cachedPublished = published;
+            if (sequence >= cachedPublished) {
+                if (closed) return null;
+                await();
+            }
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Hands the last taken slot back to the producer.
+     */
+    void release() {
+        released = released + 1;
+    }
+
+    /**
+     * Waits for a published slot and adds it, and up to max - 1 more that are already
+     * published, to the batch. The slots must be handed back with release(count).
+     * @return The number of slots added.
+     */
+    int takeBatch(List<E> batch, int max) {
+        long sequence = released;
+        while (sequence >= cachedPublished) {
+            cachedPublished = published;
+            if (sequence >= cachedPublished) {
+                await();
+            }
+        }
+        int count = (int) Math.min(max, cachedPublished - sequence);
+        for (int i = 0; i < count; i++) {
+            batch.add(slots[(int) (sequence + i) & mask]);
+        }
+        return count;
+    }
+
+    /**
+     * Hands the given number of taken slots back to the producer.
+     */
+    void release(int count) {
+        released = released + count;
+    }
+
+    /**
+     * Tells both sides that the other one has stopped, so neither waits on it any longer.
+     */
+    void close() {
+        closed = true;
+    }
+
+    void await() {
+        if (waitStrategy == WaitStrategy.BUSY_SPIN) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
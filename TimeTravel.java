@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Answers queries about the past state of the Gator Delivery system.
+ * Every command that changes the state is logged as a few ints. A query at time T
+ * runs against a replica, a second engine that replays the log up to the first command
+ * issued later than T, with its output discarded, and then answers the query.
+ *
+ * The replica is kept between queries. A query at or after the latest time the replica
+ * has replayed only replays the commands logged since, so queries moving forward in time
+ * replay the log once in total. A query about an earlier time starts a new replica from
+ * the beginning of the log. The live engine is never copied or paused: logging a command
+ * costs O(1), and the replica is never larger than the live state.
+ */
+class TimeTravel {
+
+    static final int RECORD_INTS = 1 + Command.MAX_ARGS;
+
+    gatorDelivery engine;
+
+    // Log of the commands that changed the state, RECORD_INTS ints per command
+    int[] log = new int[1024 * RECORD_INTS];
+    int logSize;
+
+    // Engine replaying the log, the number of logged commands it has applied and their latest system time
+    gatorDelivery replica;
+    int replicaLogIndex;
+    int replicaMaxTime;
+
+    /**
+     * Starts tracking the history of an engine that has not run any command yet.
+     */
+    TimeTravel(gatorDelivery engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Logs a command that has just been applied, if it changes the state.
+     */
+    void record(Command command) {
+        switch (command.opcode) {
+            case Command.CREATE_ORDER:
+            case Command.CANCEL_ORDER:
+            case Command.UPDATE_TIME:
+            case Command.BEGIN_BATCH:
+            case Command.END_BATCH:
+                break;
+            default:
+                return;
+        }
+
+        if ((logSize + 1) * RECORD_INTS > log.length) {
+            log = Arrays.copyOf(log, log.length * 2);
+        }
+        int offset = logSize * RECORD_INTS;
+        log[offset] = command.opcode;
+        System.arraycopy(command.args, 0, log, offset + 1, Command.MAX_ARGS);
+        logSize++;
+    }
+
+    /**
+     * Runs a query against the state the engine was in at the given time, that is after
+     * every logged command up to the first one issued later than that time.
+     * The query's output goes to the regular output; the engine's current state is left untouched.
+     */
+    void query(int time, Command query) {
+        if (replica == null || replicaMaxTime > time) {
+            // The replica is past the time; start over from an empty engine
+            replica = new gatorDelivery(engine.orderArchive != null, false, null);
+            replica.events = null;
+            replicaLogIndex = 0;
+            replicaMaxTime = Integer.MIN_VALUE;
+        }
+
+        // Replay the commands up to the time without publishing any events
+        Command command = new Command();
+        for (; replicaLogIndex < logSize; replicaLogIndex++) {
+            int offset = replicaLogIndex * RECORD_INTS;
+            command.opcode = log[offset];
+            System.arraycopy(log, offset + 1, command.args, 0, Command.MAX_ARGS);
+            if (command.opcode != Command.BEGIN_BATCH && command.opcode != Command.END_BATCH) {
+                if (command.args[1] > time) break;
+                replicaMaxTime = Math.max(replicaMaxTime, command.args[1]);
+            }
+            replica.executeCommand(command);
+        }
+
+        replica.events = engine.events;
+        try {
+            replica.executeCommand(query);
+        } finally {
+            replica.events = null;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel indexing the nodes of an ETATree by their ETA
+ * in the Gator Delivery system.
+ * Each level has 64 slots and covers 64 times the range of the level below,
+ * so six levels cover every non-negative int. Scheduling and canceling a node
+ * are O(1); advancing the clock only touches the slots that hold due nodes.
+ *
+ * Nodes that became due are parked on the AVLTree node they refer to, because
+ * a later change of that node's order can make them deliverable again.
+ */
+class TimingWheel {
+
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int SLOT_MASK = SLOTS - 1;
+    static final int LEVELS = 6;
+
+    // Bucket ids besides the slots of the wheel
+    static final int OVERDUE = LEVELS * SLOTS;
+    static final int PARKED = -2;
+    static final int UNSCHEDULED = -1;
+
+    ETATree.Node[] buckets = new ETATree.Node[LEVELS * SLOTS + 1];
+    long[] occupied = new long[LEVELS]; // One bit per non-empty slot on each level
+    int now; // The time the wheel has been advanced to
+
+    /**
+     * Schedules a node at its current ETA, moving it if it was already scheduled.
+     * Canceled nodes (ETA of Integer.MAX_VALUE) are only removed from the wheel.
+     */
+    void schedule(ETATree.Node node) {
+        cancel(node);
+        if (node.eta != Integer.MAX_VALUE) {
+            add(node);
+        }
+    }
+
+    /**
+     * Removes a node from the wheel, wherever it is scheduled or parked.
+     */
+    void cancel(ETATree.Node node) {
+        int bucket = node.wheelBucket;
+        if (bucket == UNSCHEDULED) return;
+
+        if (node.wheelPrev != null) {
+            node.wheelPrev.wheelNext = node.wheelNext;
+        } else if (bucket == PARKED) {
+            node.avlNode.parked = node.wheelNext;
+        } else {
+            buckets[bucket] = node.wheelNext;
+            if (buckets[bucket] == null && bucket != OVERDUE) {
+                occupied[bucket / SLOTS] &= ~(1L << (bucket & SLOT_MASK));
+            }
+        }
+        if (node.wheelNext != null) {
+            node.wheelNext.wheelPrev = node.wheelPrev;
+        }
+        node.wheelPrev = null;
+        node.wheelNext = null;
+        node.wheelBucket = UNSCHEDULED;
+    }
+
+    /**
+     * Advances the clock to the given time and collects every node whose ETA is now due.
+     * The collected nodes are parked until they are rescheduled or unparked.
+     * @param time The current system time.
+     * @param due The list receiving the due nodes.
+     */
+    void advance(int time, List<ETATree.Node> due) {
+        // Nodes scheduled at or before the wheel's time wait in the overdue bucket
+        ETATree.Node node = buckets[OVERDUE];
+        while (node != null) {
+            ETATree.Node next = node.wheelNext;
+            if (node.eta <= time) {
+                expire(node, due);
+            }
+            node = next;
+        }
+
+        while (now < time) {
+            long next = nextSlotStart();
+            if (next > time) {
+                now = time;
+                break;
+            }
+            now = (int) next;
+
+            // Cascade the slots that start now down to the lower levels, then expire level 0
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((now & ((1 << shift) - 1)) == 0) {
+                    cascade(level * SLOTS + ((now >>> shift) & SLOT_MASK), due);
+                }
+            }
+            int bucket = now & SLOT_MASK;
+            while (buckets[bucket] != null) {
+                expire(buckets[bucket], due);
+            }
+        }
+    }
+
+    /**
+     * Moves the nodes parked on the given AVLTree node back into the wheel,
+     * so the next advance reports them again. Called when the node's order changes.
+     */
+    void unpark(AVLTree.Node avlNode) {
+        while (avlNode.parked != null) {
+            schedule(avlNode.parked);
+        }
+    }
+
+    //This method places a node in the overdue bucket or in the slot matching its ETA.
+    void add(ETATree.Node node) {
+        int bucket = OVERDUE;
+        if (node.eta > now) {
+            // The level is given by the highest bit in which the ETA differs from the current time
+            int level = (31 - Integer.numberOfLeadingZeros(node.eta ^ now)) / SLOT_BITS;
+            int slot = (node.eta >>> (level * SLOT_BITS)) & SLOT_MASK;
+            bucket = level * SLOTS + slot;
+            occupied[level] |= 1L << slot;
+        }
+        node.wheelBucket = bucket;
+        node.wheelPrev = null;
+        node.wheelNext = buckets[bucket];
+        if (node.wheelNext != null) node.wheelNext.wheelPrev = node;
+        buckets[bucket] = node;
+    }
+
+    //This method redistributes the nodes of a higher level slot that has just started.
+    void cascade(int bucket, List<ETATree.Node> due) {
+        ETATree.Node node = buckets[bucket];
+        while (node != null) {
+            ETATree.Node next = node.wheelNext;
+            cancel(node);
+            if (node.eta <= now) {
+                park(node);
+                due.add(node);
+            } else {
+                add(node);
+            }
+            node = next;
+        }
+    }
+
+    //This method reports a node as due and parks it.
+    void expire(ETATree.Node node, List<ETATree.Node> due) {
+        cancel(node);
+        park(node);
+        due.add(node);
+    }
+
+    void park(ETATree.Node node) {
+        node.wheelBucket = PARKED;
+        node.wheelPrev = null;
+        node.wheelNext = node.avlNode.parked;
+        if (node.wheelNext != null) node.wheelNext.wheelPrev = node;
+        node.avlNode.parked = node;
+    }
+
+    //This method finds the earliest time at which a non-empty slot starts, or Long.MAX_VALUE if the wheel is empty.
+    long nextSlotStart() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            int current = (now >>> shift) & SLOT_MASK;
+            if (current == SLOT_MASK) continue;
+
+            long ahead = occupied[level] & (-1L << (current + 1));
+            if (ahead == 0) continue;
+
+            int slot = Long.numberOfTrailingZeros(ahead);
+            long start = ((long) now >>> (shift + SLOT_BITS) << (shift + SLOT_BITS)) | ((long) slot << shift);
+            next = Math.min(next, start);
+        }
+        return next;
+    }
+}
@@ -1,115 +1,305 @@
 import java.util.*;
+import java.util.stream.IntStream;
 import java.io.*;
 
 /**
  * The GatorDelivery class implements a delivery management system for handling orders, priorities, delivery times, and estimated time of arrival (ETA).
  * It utilizes AVL trees for order prioritization and ETA trees for efficient retrieval of orders within specified time ranges.
+ * Each instance is an independent engine with its own trees, processing one input file.
  */
 public class gatorDelivery {
- static PrintWriter writer;
-    static AVLTree priorityTree = new AVLTree(); // AVL tree for order prioritization
-    static ETATree etaTree = new ETATree(); // ETA tree for efficient retrieval of orders within time ranges
-    static int eta_track = 0; // Tracks the overall delivery time for ETA calculation
-    static Set<Integer> deliveredOrderIds = new HashSet<>(); // Set to track delivered orders
+ PrintWriter writer;
+    AVLTree priorityTree = new AVLTree(); // AVL tree for order prioritization
+    ETATree etaTree = new ETATree(); // ETA tree for efficient retrieval of orders within time ranges
+    TimingWheel deliveryWheel = new TimingWheel(); // Timing wheel over the ETA tree nodes for finding due deliveries
+    int eta_track = 0; // Tracks the overall delivery time for ETA calculation
+    Set<Integer> deliveredOrderIds = new HashSet<>(); // Set to track delivered orders, left empty in archive mode, which evicts them instead
+    Map<Integer, List<AVLTree.Node>> referredNodes = new HashMap<>(); // AVL nodes referred to by ETA nodes, by the id of their order while it's not delivered
+    OrderArchive orderArchive; // Archive the retired orders are evicted to, only set when archiving is enabled
+    ResultCache resultCache = new ResultCache(1024); // Cache for repeated print(t1, t2) and getRankOfOrder queries
+    DeliveryEventBus events = new DeliveryEventBus(); // Publishes the delivery events to the output file and any other subscribed listeners
+    TimeTravel timeTravel; // Command log and replica for at(T, ...) queries, only set when history is enabled
+    RingBuffer.WaitStrategy pipelineWaitStrategy; // Wait strategy of the staged pipeline, only set in pipelined mode
+
+    // State of the current batch: whether one is open, the orders whose ETA it changed and the deliveries whose report is deferred to its end
+    boolean batching = false;
+    Set<Integer> batchUpdatedOrders = new LinkedHashSet<>();
+    Map<Integer, Integer> batchDeliveredOrders = new LinkedHashMap<>();
+
+    static final int PARALLEL_ETA_THRESHOLD = 1024; // Number of updated orders above which their ETAs are calculated in parallel
 
 
+/**
+ * Constructs an engine with empty trees. Engines share no state, so several can run at once.
+ * @param archive Whether delivered and canceled orders are evicted from the trees to an off-heap archive.
+ * @param history Whether a command log is kept to answer at(T, ...) queries.
+ * @param pipelineWaitStrategy The wait strategy of the staged pipeline, or null to read text input on the calling thread.
+ */
+    gatorDelivery(boolean archive, boolean history, RingBuffer.WaitStrategy pipelineWaitStrategy) {
+        if (archive) {
+            // Evict delivered and canceled orders to the off-heap archive
+            orderArchive = new OrderArchive();
+        }
+        if (history) {
+            // Keep a command log to answer at(T, ...) queries
+            timeTravel = new TimeTravel(this);
+        }
+        this.pipelineWaitStrategy = pipelineWaitStrategy;
+    }
+
 /**
  * This is the entry point of the program and is called when the program starts. 
  * It's used to read input from a file, process commands, and write output to another file.
+ * Given several files or a directory, it processes the files concurrently, each with its own engine.
  */
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Usage: java GatorDelivery <input_filename>");
+        List<String> inputFilenames = new ArrayList<>();
+        boolean archive = false;
+        boolean history = false;
+        boolean convert = false;
+        int threads = 0; // Until given, chosen once the mode is known
+        RingBuffer.WaitStrategy pipelineWaitStrategy = null;
+        for (String arg : args) {
+            if (arg.equals("--archive")) {
+                archive = true;
+            } else if (arg.equals("--history")) {
+                history = true;
+            } else if (arg.equals("--convert")) {
+                convert = true;
+            } else if (arg.equals("--pipelined")) {
+                pipelineWaitStrategy = RingBuffer.WaitStrategy.PARK;
+            } else if (arg.equals("--pipelined=spin")) {
+                pipelineWaitStrategy = RingBuffer.WaitStrategy.BUSY_SPIN;
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Invalid thread count: " + arg + " (expected a positive integer)");
+                    printUsage();
+                    System.exit(1);
+                }
+            } else {
+                inputFilenames.add(arg);
+            }
+        }
+        if (inputFilenames.isEmpty()) {
+            printUsage();
             return;
         }
+        if (threads == 0) {
+            threads = MultiFileRunner.defaultThreads(pipelineWaitStrategy != null);
+        }
+
+        if (convert) {
+            // Convert the text commands to the binary format next to each input file
+            boolean failed = false;
+            for (String inputFilename : inputFilenames) {
+                if (!inputFilename.endsWith(".txt")) {
+                    System.err.println("Error converting file: " + inputFilename + " is not a .txt file");
+                    failed = true;
+                    continue;
+                }
+                try {
+                    BinaryCommands.convert(inputFilename,
+                            inputFilename.substring(0, inputFilename.length() - ".txt".length()) + ".bin");
+                } catch (IOException e) {
+                    System.err.println("Error converting file: " + e.getMessage());
+                    failed = true;
+                }
+            }
+            if (failed) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (inputFilenames.size() == 1 && !new File(inputFilenames.get(0)).isDirectory()) {
+            try {
+                new gatorDelivery(archive, history, pipelineWaitStrategy).run(inputFilenames.get(0));
+            } catch (IOException e) {
+                System.err.println("Error reading or writing files: " + e.getMessage());
+            }
+            return;
+        }
+
+        // Process many files in this JVM, on a bounded pool of worker threads
+        MultiFileRunner runner = new MultiFileRunner(threads, archive, history, pipelineWaitStrategy);
+        if (runner.run(MultiFileRunner.inputFiles(inputFilenames)) > 0) {
+            System.exit(1);
+        }
+    }
+
+    //This method prints how to run the program, when it's run without input files or with invalid options.
+    static void printUsage() {
+        System.out.println("Usage: java GatorDelivery [--archive] [--history] [--pipelined[=spin]] [--threads=N] <input_filename or directory>...");
+        System.out.println("       java GatorDelivery --convert <input_filename>.txt...");
+    }
 
-        String inputFilename = args[0];
-        String outputFilename = inputFilename.replace(".txt", "_output.txt");
+    //This method processes an input file with this engine and writes the output next to it.
+    void run(String inputFilename) throws IOException {
+        boolean binary = inputFilename.endsWith(".bin");
+        String outputFilename = binary ? inputFilename.replace(".bin", "_output.txt")
+                : inputFilename.replace(".txt", "_output.txt");
 
         try (
-            BufferedReader reader = new BufferedReader(new FileReader(inputFilename));
+            BufferedReader reader = binary ? null : new BufferedReader(new FileReader(inputFilename));
             PrintWriter fileWriter = new PrintWriter(new FileWriter(outputFilename))
         ) {
-            writer = fileWriter; // Assign the fileWriter to the global writer variable
-            String command;
-            while ((command = reader.readLine()) != null) {
-                command = command.trim();
-                if (command.equals("Quit()"))
-                    break;
-                processCommand(command);
+            writer = fileWriter; // Assign the fileWriter to the engine's writer variable
+            OutputFileListener outputListener = new OutputFileListener(writer);
+            try (DeliveryEventBus eventBus = events.start()) {
+                eventBus.subscribe(outputListener);
+                if (binary) {
+                    // Binary commands are streamed through an NIO channel and skip text parsing
+                    BinaryCommands.read(inputFilename, this::executeCommand);
+                    finishCommands();
+                } else if (pipelineWaitStrategy != null) {
+                    // Read and parse on their own threads while this thread applies the commands
+                    new CommandPipeline(this, pipelineWaitStrategy).run(reader);
+                } else {
+                    String command;
+                    while ((command = reader.readLine()) != null) {
+                        command = command.trim();
+                        if (command.equals("Quit()"))
+                            break;
+                        processCommand(command);
+                    }
+                    finishCommands();
+                }
+            } finally {
+                // The bus is closed by now, so every event has reached the file
+                events.unsubscribe(outputListener);
             }
-        } catch (IOException e) {
-            System.err.println("Error reading or writing files: " + e.getMessage());
         }
     }
 
     //this method will process the commands from text file.
-    static void processCommand(String command) {
-        String[] tokens = command.split("\\(|,|\\)");
-        for (int i = 0; i < tokens.length; i++) {
-            tokens[i] = tokens[i].trim(); // Trim each token
-   	}
-        switch (tokens[0]) {
-            case "print":
-                if (tokens.length == 2) {
-                    int orderId = Integer.parseInt(tokens[1]);
-                    print(orderId);
-                } else if (tokens.length == 3) {
-                    int time1 = Integer.parseInt(tokens[1].trim());
-                    int time2 = Integer.parseInt(tokens[2].trim());
-                    print(time1, time2);
-                } else {
-		    //This line will send the strings to the writeOutput method. Which is a method that will write to the output file. This line will be used throughout the code.
-                    writeOutput("Invalid order command.");
-                }
+    void processCommand(String command) {
+        executeCommand(new Command().parse(command));
+    }
+
+    //This method runs a parsed command. It's shared by the text and the binary ingest paths.
+    void executeCommand(Command command) {
+        int[] args = command.args;
+        switch (command.opcode) {
+            case Command.PRINT_ORDER:
+                print(args[0]);
                 break;
-            case "getRankOfOrder":
-                if (tokens.length == 2) {
-                    int orderId = Integer.parseInt(tokens[1]);
-                    getRankOfOrder(orderId);
-                } else {
-                    writeOutput("Invalid getRankOfOrder command.");
-                }
+            case Command.PRINT_RANGE:
+                print(args[0], args[1]);
                 break;
-            case "createOrder":
-                if (tokens.length == 5) {
-                    int orderId = Integer.parseInt(tokens[1]);
-                    int currentSystemTime = Integer.parseInt(tokens[2]);
-                    int orderValue = Integer.parseInt(tokens[3]);
-                    int deliveryTime = Integer.parseInt(tokens[4]);
-                    createOrder(orderId, currentSystemTime, orderValue, deliveryTime);
-                } else {
-                    writeOutput("Invalid createOrder command.");
-                }
+            case Command.COUNT_RANGE:
+                count(args[0], args[1]);
                 break;
-            case "cancelOrder":
-                if (tokens.length == 3) {
-                    int orderId = Integer.parseInt(tokens[1]);
-                    int currentSystemTime = Integer.parseInt(tokens[2]);
-                    cancelOrder(orderId, currentSystemTime);
-                } else {
-                    writeOutput("Invalid cancelOrder command.");
-                }
+            case Command.MIN_ETA:
+                printETABound(etaTree.root == null ? 0 : etaTree.root.minEta, DeliveryEvent.Format.EARLIEST_ETA);
                 break;
-            case "updateTime":
-                if (tokens.length == 4) {
-                    
-		    int orderId = Integer.parseInt(tokens[1]);
-                    int currentSystemTime = Integer.parseInt(tokens[2]);
-                    int newDeliveryTime = Integer.parseInt(tokens[3]);
-                    updateTime(orderId, currentSystemTime, newDeliveryTime);
-                } else {
-                    writeOutput("Invalid updateTime command.");
+            case Command.MAX_ETA:
+                printETABound(etaTree.root == null ? 0 : etaTree.root.maxEta, DeliveryEvent.Format.LATEST_ETA);
+                break;
+            case Command.GET_RANK_OF_ORDER:
+                getRankOfOrder(args[0]);
+                break;
+            case Command.CREATE_ORDER:
+                createOrder(args[0], args[1], args[2], args[3]);
+                break;
+            case Command.CANCEL_ORDER:
+                cancelOrder(args[0], args[1]);
+                break;
+            case Command.UPDATE_TIME:
+                updateTime(args[0], args[1], args[2]);
+                break;
+            case Command.CACHE_STATS:
+                DeliveryEvent stats = claimEvent(DeliveryEvent.Type.MESSAGE, DeliveryEvent.Format.CACHE_STATS, 0, 0);
+                if (stats != null) {
+                    stats.value1 = resultCache.hits;
+                    stats.value2 = resultCache.misses;
+                    events.publish();
                 }
                 break;
+            case Command.BEGIN_BATCH:
+                beginBatch();
+                break;
+            case Command.END_BATCH:
+                endBatch();
+                break;
+            case Command.AT:
+                at(args[0], args[1], args[2], args[3]);
+                break;
             default:
-                writeOutput("Invalid command: " + command);
+                //This line will send the strings to the writeOutput method. Which is a method that will write to the output file. This line will be used throughout the code.
+                writeOutput(command.message);
                 break;
         }
+
+        if (timeTravel != null) {
+            timeTravel.record(command);
+        }
     }
    
+    //This method runs a print or getRankOfOrder query against the state the system was in at the given time.
+    void at(int time, int queryOpcode, int arg1, int arg2) {
+        if (timeTravel == null) {
+            writeOutput("Time travel is not enabled.");
+            return;
+        }
+        Command query = new Command();
+        query.opcode = queryOpcode;
+        query.args[0] = arg1;
+        query.args[1] = arg2;
+        timeTravel.query(time, query);
+    }
+
+    //This method is called once the input has been processed. It ends a batch left open by the input.
+    void finishCommands() {
+        if (batching) {
+            endBatch();
+        }
+    }
+
+    //This method starts a batch. Until endBatch(), createOrder, cancelOrder and updateTime apply their changes as they would one at a time and print their own result; the updated ETAs and the delivered orders are reported once at the end.
+    void beginBatch() {
+        if (!batching) {
+            batching = true;
+            batchUpdatedOrders.clear();
+            batchDeliveredOrders.clear();
+        }
+    }
+
+    //This method ends the current batch and prints one consolidated report: the current ETAs of the orders the batch updated, then the orders it delivered.
+    void endBatch() {
+        if (!batching) {
+            writeOutput("There is no batch to end.");
+            return;
+        }
+        batching = false;
+        printUpdatedETAs(batchUpdatedOrders);
+        printDeliveredOrders(batchDeliveredOrders);
+        batchUpdatedOrders.clear();
+        batchDeliveredOrders.clear();
+    }
+
+    //This method prints the updated ETAs. In a batch, setETA records the updated orders instead and they are reported at its end.
+    void reportUpdatedETAs(int currentSystemTime) {
+        if (!batching) {
+            printUpdatedETAs(currentSystemTime);
+        }
+    }
+
+    //This method delivers the orders that are due and prints them, or defers printing them to the end of the current batch.
+    void reportDeliveredOrders(int currentSystemTime) {
+        if (batching) {
+            deliverOrders(currentSystemTime, batchDeliveredOrders);
+        } else {
+            printDeliveredOrders(currentSystemTime);
+        }
+    }
+
     // This method prints the details of a specific order. It calculates the ETA and prints the order details if the order exists. 
-    static void print(int orderId) {
+    void print(int orderId) {
         // Retrieve order from AVL tree
         Order order = searchOrder(orderId);
 
@@ -119,31 +309,72 @@ public class gatorDelivery {
             int eta = calculateETA(order);
 
             // Print order details
-            writeOutput("[" + order.orderId + ", " + order.currentSystemTime + ", " + order.orderValue + ", "
-                    + order.deliveryTime + ", " + eta + "]");
+            writeOrder(order.orderId, order.currentSystemTime, order.orderValue, order.deliveryTime, eta);
         } else {
-            writeOutput("Order with orderId " + orderId + " not found.");
+            // Retired orders are only kept in the archive, with the ETA they left the queue with
+            OrderArchive.Entry entry = orderArchive != null ? orderArchive.find(orderId) : null;
+            if (entry != null) {
+                writeOrder(entry.orderId, entry.currentSystemTime, entry.orderValue, entry.deliveryTime, entry.eta);
+            } else {
+                writeOutput(DeliveryEvent.Format.ORDER_WITH_ID_NOT_FOUND, orderId, 0);
+            }
+        }
+    }
+
+    //This method publishes the details of an order as a message event.
+    void writeOrder(int orderId, int currentSystemTime, int orderValue, int deliveryTime, int eta) {
+        DeliveryEvent event = claimEvent(DeliveryEvent.Type.MESSAGE, DeliveryEvent.Format.ORDER, orderId, eta);
+        if (event != null) {
+            event.value1 = currentSystemTime;
+            event.value2 = orderValue;
+            event.value3 = deliveryTime;
+            events.publish();
         }
     }
 
    // This method prints orders within a specified time range. It traverses the ETA tree to find orders within the range and prints them. This method is used.
-   static void print(int time1, int time2) {
-    // Retrieve orders within the given time range
-    List<Integer> ordersWithinRange = new ArrayList<>();
-    printOrdersWithinRange(etaTree.root, time1, time2, ordersWithinRange);
-
-    if (!ordersWithinRange.isEmpty()) {
-        // Convert the list of integers to a comma-separated string
-        String ordersString = String.join(", ", ordersWithinRange.stream().map(Object::toString).toArray(String[]::new));
-        writeOutput(ordersString);
-    } else {
-        writeOutput("There are no orders in that time period");
+   void print(int time1, int time2) {
+    // Serve repeated queries from the cache until the next mutation
+    ResultCache.Key query = new ResultCache.Key(Command.PRINT_RANGE, time1, time2);
+    int[] result = (int[]) resultCache.get(query);
+    if (result == null) {
+        // Retrieve orders within the given time range, splitting the traversal across cores on large trees
+        List<Integer> ordersWithinRange = new ArrayList<>();
+        if (ETATreeScan.isLarge(etaTree.root)) {
+            ordersWithinRange = ETATreeScan.collect(etaTree.root, node -> node.eta >= time1 && node.eta <= time2
+                    && !deliveredOrderIds.contains(node.avlNode.order.orderId));
+        } else {
+            printOrdersWithinRange(etaTree.root, time1, time2, ordersWithinRange);
+        }
+
+        // The listeners format the ids into a comma-separated line
+        result = ordersWithinRange.stream().mapToInt(Integer::intValue).toArray();
+        resultCache.put(query, result);
+    }
+    DeliveryEvent event = claimEvent(DeliveryEvent.Type.MESSAGE, DeliveryEvent.Format.ORDER_IDS, 0, 0);
+    if (event != null) {
+        event.orderIds = result;
+        events.publish();
     }
 }
 
 
+    //This method prints how many orders print(time1, time2) would list. It's answered in logarithmic time from the ETA tree's aggregates, without listing the orders.
+    void count(int time1, int time2) {
+        writeOutput(DeliveryEvent.Format.COUNT, 0, etaTree.count(etaTree.root, time1, time2));
+    }
+
+    //This method prints the earliest or latest ETA of the orders print(time1, time2) can list, leaving out canceled ones. The root of the ETA tree keeps both for its whole tree.
+    void printETABound(int eta, DeliveryEvent.Format format) {
+        if (etaTree.root == null || etaTree.root.minEta > etaTree.root.maxEta) {
+            writeOutput("There are no orders in the queue");
+        } else {
+            writeOutput(format, 0, eta);
+        }
+    }
+
     //This method is a helper method for the print(int time1, int time2) method. It recursively traverses the ETA tree to find orders within the specified time range
-    static void printOrdersWithinRange(ETATree.Node node, int time1, int time2, List<Integer> ordersWithinRange) {
+    void printOrdersWithinRange(ETATree.Node node, int time1, int time2, List<Integer> ordersWithinRange) {
         if (node != null) {
 
             int etaWithDeliveryTime = node.eta;
@@ -160,19 +391,25 @@ public class gatorDelivery {
 
 
     //This method retrieves the rank of a specific order based on its priority in the AVL tree. It's called when the "getRankOfOrder" command is processed. 
-    static void getRankOfOrder(int orderId) {
-        // Retrieve rank of order from AVL tree
-        int rank = getRankOfOrder(priorityTree.root, orderId);
+    void getRankOfOrder(int orderId) {
+        // Serve repeated queries from the cache until the next mutation
+        ResultCache.Key query = new ResultCache.Key(Command.GET_RANK_OF_ORDER, orderId, 0);
+        Integer rank = (Integer) resultCache.get(query);
+        if (rank == null) {
+            // Retrieve rank of order from AVL tree
+            rank = getRankOfOrder(priorityTree.root, orderId);
+            resultCache.put(query, rank);
+        }
 
         if (rank > 0) {
-            writeOutput("Order " + orderId + " will be delivered after " + rank + " orders.");
+            writeOutput(DeliveryEvent.Format.RANK, orderId, rank);
         } else {
-            writeOutput("Order " + orderId + " not found.");
+            writeOutput(DeliveryEvent.Format.ORDER_NOT_FOUND, orderId, 0);
         }
     }
 
     // This method is a helper method for getRankOfOrder(int orderId). It recursively traverses the AVL tree to find the rank of the order. 
-    static int getRankOfOrder(AVLTree.Node node, int orderId) {
+    int getRankOfOrder(AVLTree.Node node, int orderId) {
         if (node == null) return 0;
     
         if (node.order.orderId == orderId) return 1;
@@ -185,13 +422,13 @@ public class gatorDelivery {
 
 
     //This method calculates the size of the AVL tree rooted at the given node. It's called to determine the size of the AVL tree, but it's not directly used in the main functionality of the program. Used at debugging.
-    static int size(AVLTree.Node node) {
+    int size(AVLTree.Node node) {
         if (node == null) return 0;
         return 1 + size(node.left) + size(node.right);
     }
     
     //Another debugging method
-    static void printAVLTreeStructure(AVLTree.Node node) {
+    void printAVLTreeStructure(AVLTree.Node node) {
         if (node != null) {
             printAVLTreeStructure(node.left);
             //System.out.println("Order ID: " + node.order.orderId + ", Priority: " + node.order.calculatePriority());
@@ -201,8 +438,9 @@ public class gatorDelivery {
     
 
     //This method creates a new order and inserts it into the AVL and ETA trees. It's called when the "createOrder" command is processed.
-    static void createOrder(int orderId, int currentSystemTime, int orderValue, int deliveryTime) {
-        
+    void createOrder(int orderId, int currentSystemTime, int orderValue, int deliveryTime) {
+        resultCache.bumpEpoch();
+
         Order order = new Order(orderId, currentSystemTime, orderValue, deliveryTime);
         priorityTree.root = priorityTree.insert(priorityTree.root, order);
         int eta = calculateETA(order);
@@ -211,8 +449,11 @@ public class gatorDelivery {
         // Update eta_track
         eta_track += order.deliveryTime+currentSystemTime;
     
-        // Insert ETA into the ETA tree
-        etaTree.root = etaTree.insert(etaTree.root, eta, priorityTree.root);
+        // Insert ETA into the ETA tree and schedule it for delivery
+        ETATree.Node etaNode = new ETATree.Node(eta, priorityTree.root);
+        addReferrer(etaNode);
+        etaTree.root = etaTree.insert(etaTree.root, etaNode);
+        deliveryWheel.schedule(etaNode);
     
         // Print the orderId values of nodes in the AVL tree
         //System.out.println("Debug: Printing AVL Tree structure after creating order " + orderId + ":");
@@ -223,35 +464,52 @@ public class gatorDelivery {
     
         if (highestPriorityNode != null && highestPriorityNode.order.calculatePriority() >= order.calculatePriority() &&
                 calculateETA(highestPriorityNode.order) <= currentSystemTime) {
-            // Remove the highest priority order from the delivery queue
-            priorityTree.root = deleteNode(priorityTree.root, highestPriorityNode.order.orderId);
+            Order deliveredOrder = highestPriorityNode.order;
+            int deliveredETA = calculateETA(deliveredOrder);
+
+            // Remove the highest priority order from the delivery queue; in archive mode it's evicted below, once the ETAs are updated
+            if (orderArchive == null) {
+                priorityTree.root = deleteNode(priorityTree.root, highestPriorityNode.order.orderId);
+            }
     
             // Update ETA for orders affected by the change in delivery queue order
             updateETAForAffectedOrders(highestPriorityNode.order, currentSystemTime);
             
             // Print the change in delivery queue order
-            writeOutput("Order " + highestPriorityNode.order.orderId + " has been delivered. Order " +
-                               order.orderId + " is now under delivery.");
+            DeliveryEvent event = claimEvent(DeliveryEvent.Type.ORDER_DELIVERED, DeliveryEvent.Format.DELIVERED_NEXT, deliveredOrder.orderId, deliveredETA);
+            if (event != null) {
+                event.value1 = highestPriorityNode.order.orderId;
+                event.value2 = order.orderId;
+                events.publish();
+            }
+            publish(DeliveryEvent.Type.ORDER_CREATED, DeliveryEvent.Format.NONE, orderId, eta);
+
+            // Evict the delivered order to the archive
+            if (orderArchive != null) {
+                orderArchive.addFinishTime(deliveredOrder.calculatePriority(), deliveredETA + deliveredOrder.deliveryTime, currentSystemTime);
+                retire(deliveredOrder, deliveredETA);
+            }
     
             // Print the updated ETAs
-            printUpdatedETAs(currentSystemTime);
+            reportUpdatedETAs(currentSystemTime);
         } else {
             // Print the newly created order with its ETA
             if (currentSystemTime >= eta) {
-                writeOutput("Order " + orderId + " has been delivered at time " + eta + ".");
+                publish(DeliveryEvent.Type.ORDER_CREATED, DeliveryEvent.Format.NONE, orderId, eta);
+                publish(DeliveryEvent.Type.ORDER_DELIVERED, DeliveryEvent.Format.DELIVERED, orderId, eta);
             } else {
-                writeOutput("Order " + orderId + " has been created - ETA: " + eta);
+                publish(DeliveryEvent.Type.ORDER_CREATED, DeliveryEvent.Format.CREATED, orderId, eta);
             }
     
             // Print delivered orders
-            printDeliveredOrders(currentSystemTime);
+            reportDeliveredOrders(currentSystemTime);
         }
     }
 
 
 
     // This method finds the highest priority order in the AVL tree. It's called to determine if a newly created order has higher priority than existing orders, but it's not directly used in the main functionality of the program.
-    static AVLTree.Node findHighestPriorityOrder(AVLTree.Node node, Order order) {
+    AVLTree.Node findHighestPriorityOrder(AVLTree.Node node, Order order) {
         if (node == null) return null;
     
         AVLTree.Node highestPriorityNode = null;
@@ -268,89 +526,165 @@ public class gatorDelivery {
     }
 
     //This method updates the ETAs of orders affected by the delivery of a specific order. It's called when an order is delivered to adjust the ETAs of other orders in the ETA tree.
-    static void updateETAForAffectedOrders(Order deliveredOrder, int currentSystemTime) {
-        // Traverse the ETA tree to update ETAs of orders affected by the delivery of the deliveredOrder
-        etaTree.root = updateETAForAffectedOrders(etaTree.root, deliveredOrder, currentSystemTime);
+    void updateETAForAffectedOrders(Order deliveredOrder, int currentSystemTime) {
+        // Find the nodes first, since changing the ETA of a node moves it in the ETA tree
+        List<ETATree.Node> path = new ArrayList<>();
+        updateETAForAffectedOrders(etaTree.root, deliveredOrder, path);
+
+        for (ETATree.Node node : path) {
+            if (node.avlNode.order.orderId == deliveredOrder.orderId) {
+                setETA(node, Integer.MAX_VALUE); // Mark this node as delivered
+            } else if (node.avlNode.order.orderId < deliveredOrder.orderId && node.eta > currentSystemTime) {
+                // Update ETA if the order is not delivered yet
+                setETA(node, currentSystemTime + deliveredOrder.deliveryTime);
+                writeOutput(DeliveryEvent.Format.ETA_UPDATE, node.avlNode.order.orderId, node.eta);
+            }
+        }
     }
     
 
-    // This method is a helper method for updateETAForAffectedOrders(Order deliveredOrder, int currentSystemTime). It recursively traverses the ETA tree to update ETAs. 
-    static ETATree.Node updateETAForAffectedOrders(ETATree.Node node, Order deliveredOrder, int currentSystemTime) {
-        if (node == null) return null;
-    
-        if (node.avlNode.order.orderId == deliveredOrder.orderId) {
-            node.eta = Integer.MAX_VALUE; // Mark this node as delivered
-        }
-    
+    // This method is a helper method for updateETAForAffectedOrders(Order deliveredOrder, int currentSystemTime). It recursively traverses the ETA tree to collect the nodes on the path of the delivered order. 
+    void updateETAForAffectedOrders(ETATree.Node node, Order deliveredOrder, List<ETATree.Node> path) {
+        if (node == null) return;
+
+        path.add(node);
         if (node.avlNode.order.orderId < deliveredOrder.orderId) {
-            // Update ETA if the order is not delivered yet
-            if (node.eta > currentSystemTime) {
-                node.eta = currentSystemTime + deliveredOrder.deliveryTime;
-                writeOutput("Updated ETA for order " + node.avlNode.order.orderId + " to: " + node.eta);
-            }
-            node.left = updateETAForAffectedOrders(node.left, deliveredOrder, currentSystemTime);
+            updateETAForAffectedOrders(node.left, deliveredOrder, path);
         } else {
-            node.right = updateETAForAffectedOrders(node.right, deliveredOrder, currentSystemTime);
+            updateETAForAffectedOrders(node.right, deliveredOrder, path);
         }
-    
-        return node;
     }
 
 
-    //This method prints orders that have been delivered up to the current system time. It traverses the ETA tree to find delivered orders and prints them. 
-    static void printDeliveredOrders(int currentSystemTime) {
+    //This method prints orders that have been delivered up to the current system time.
+    void printDeliveredOrders(int currentSystemTime) {
         Map<Integer, Integer> deliveredOrders = new HashMap<>();
-        printDeliveredOrders(etaTree.root, currentSystemTime, deliveredOrders);
-    
+        deliverOrders(currentSystemTime, deliveredOrders);
+        printDeliveredOrders(deliveredOrders);
+    }
+
+    //This method prints the given delivered orders with their ETAs.
+    void printDeliveredOrders(Map<Integer, Integer> deliveredOrders) {
         for (Map.Entry<Integer, Integer> entry : deliveredOrders.entrySet()) {
             int orderId = entry.getKey();
             int eta = entry.getValue();
-            writeOutput("Order " + orderId + " has been delivered at time " + eta + ".");
+            publish(DeliveryEvent.Type.ORDER_DELIVERED, DeliveryEvent.Format.DELIVERED, orderId, eta);
         }
     }
 
-    //This method is a helper method for printDeliveredOrders(int currentSystemTime). It recursively traverses the ETA tree to find delivered orders and adds them to a map.
-    static void printDeliveredOrders(ETATree.Node node, int currentSystemTime, Map<Integer, Integer> deliveredOrders) {
-        if (node != null) {
-            if (node.eta <= currentSystemTime && !deliveredOrderIds.contains(node.avlNode.order.orderId)) {
-                AVLTree.Node avlNode = node.avlNode;
-    	    deliveredOrderIds.add(avlNode.order.orderId);
-                deliveredOrders.put(avlNode.order.orderId, node.eta);
+    //This method delivers the orders that are due by the current system time and adds them to the given map with their ETAs. It advances the timing wheel to find the ETA nodes that became due.
+    void deliverOrders(int currentSystemTime, Map<Integer, Integer> deliveredOrders) {
+        boolean delivered = false;
+        List<ETATree.Node> dueNodes = new ArrayList<>();
+        deliveryWheel.advance(currentSystemTime, dueNodes);
+
+        // Visit the due nodes in the order a pre-order walk of the ETA tree would find them
+        dueNodes.sort(etaTree::comparePreorder);
+        for (ETATree.Node node : dueNodes) {
+            if (node.avlNode == null) continue; // Evicted along with an order delivered before it
+
+            Order order = node.avlNode.order;
+            if (orderArchive != null) {
+                // Evict the delivered order to the archive
+                deliveredOrders.put(order.orderId, node.eta);
+                delivered = true;
+                orderArchive.addFinishTime(order.calculatePriority(), node.eta + order.deliveryTime, currentSystemTime);
+                retire(order, node.eta);
+            } else if (!deliveredOrderIds.contains(order.orderId)) {
+                deliveredOrderIds.add(order.orderId);
+                List<AVLTree.Node> referred = referredNodes.remove(order.orderId);
+                if (referred != null) {
+                    for (AVLTree.Node avlNode : referred) {
+                        relistReferrers(avlNode);
+                    }
+                }
+                deliveredOrders.put(order.orderId, node.eta);
+                delivered = true;
             }
-            printDeliveredOrders(node.left, currentSystemTime, deliveredOrders);
-            printDeliveredOrders(node.right, currentSystemTime, deliveredOrders);
+        }
+        if (delivered) {
+            resultCache.bumpEpoch();
         }
     }
 
+    //This method evicts a retired order from both trees to the archive. The ETA nodes referring to an AVL node that carries the order are dropped with it.
+    void retire(Order order, int eta) {
+        orderArchive.append(order, eta);
+
+        List<AVLTree.Node> referred = referredNodes.remove(order.orderId);
+        if (referred != null) {
+            for (AVLTree.Node avlNode : referred) {
+                for (ETATree.Node node = avlNode.referrers; node != null; node = node.nextReferrer) {
+                    etaTree.remove(node);
+                    deliveryWheel.cancel(node);
+                    node.avlNode = null; // Marks the node as evicted
+                }
+                avlNode.referrers = null;
+            }
+        }
+        priorityTree.root = removeOrder(priorityTree.root, order);
+    }
 
-    //This method removes delivered orders from the AVL and ETA trees.
-    static void removeDeliveredOrders(Map<Integer, Integer> deliveredOrders) {
-        for (Integer orderId : deliveredOrders.keySet()) {
-            priorityTree.root = deleteNode(priorityTree.root, orderId);
-            etaTree.root = deleteOrderFromETATree(etaTree.root, orderId);
+    //This method links a new ETA node to the AVL node it refers to and sets whether print(time1, time2) lists it. An AVL node is indexed by its order's id while ETA nodes refer to it and the order is not delivered.
+    void addReferrer(ETATree.Node node) {
+        AVLTree.Node avlNode = node.avlNode;
+        node.listed = !deliveredOrderIds.contains(avlNode.order.orderId);
+        if (avlNode.referrers == null && node.listed) {
+            referredNodes.computeIfAbsent(avlNode.order.orderId, id -> new ArrayList<>()).add(avlNode);
         }
+        node.nextReferrer = avlNode.referrers;
+        avlNode.referrers = node;
     }
 
-    //This method deletes an order from the ETA tree. It's called when an order is canceled to remove it from the ETA tree.
-    static ETATree.Node deleteOrderFromETATree(ETATree.Node node, int orderId) {
-        if (node == null) return null;
-    
-        if (node.avlNode.order.orderId == orderId) {
-            node.eta = Integer.MAX_VALUE; // Mark this node as canceled
+    //This method re-indexes an AVL node whose order has been replaced and relists the ETA nodes referring to it.
+    void moveReferrers(AVLTree.Node avlNode, int replacedOrderId) {
+        if (avlNode.referrers == null) return;
+
+        List<AVLTree.Node> referred = referredNodes.get(replacedOrderId);
+        if (referred != null) {
+            referred.remove(avlNode);
+            if (referred.isEmpty()) {
+                referredNodes.remove(replacedOrderId);
+            }
         }
-    
-        if (node.avlNode.order.orderId < orderId) {
-            node.left = deleteOrderFromETATree(node.left, orderId);
-        } else {
-            node.right = deleteOrderFromETATree(node.right, orderId);
+        if (!deliveredOrderIds.contains(avlNode.order.orderId)) {
+            referredNodes.computeIfAbsent(avlNode.order.orderId, id -> new ArrayList<>()).add(avlNode);
         }
-    
-        return node;
+        relistReferrers(avlNode);
+    }
+
+    //This method updates whether print(time1, time2) lists the ETA nodes referring to an AVL node, after its order changed or was delivered, and refreshes the tree's aggregates.
+    void relistReferrers(AVLTree.Node avlNode) {
+        boolean listed = !deliveredOrderIds.contains(avlNode.order.orderId);
+        for (ETATree.Node node = avlNode.referrers; node != null; node = node.nextReferrer) {
+            if (node.listed != listed) {
+                node.listed = listed;
+                etaTree.refresh(node);
+            }
+        }
+    }
+
+    //This method changes the ETA of a node and moves it to its new place in the ETA tree, which keeps the tree in ETA order. It also reschedules the node in the timing wheel. A new ETA other than the canceled marker is published as an event and, in a batch, recorded for the report at its end.
+    void setETA(ETATree.Node node, int eta) {
+        if (eta != node.eta && eta != Integer.MAX_VALUE) {
+            publish(DeliveryEvent.Type.ETA_CHANGED, DeliveryEvent.Format.NONE, node.avlNode.order.orderId, eta);
+            if (batching) {
+                batchUpdatedOrders.add(node.avlNode.order.orderId);
+            }
+        }
+        if (eta != node.eta) {
+            etaTree.remove(node);
+            node.eta = eta;
+            etaTree.root = etaTree.insert(etaTree.root, node);
+        }
+        deliveryWheel.schedule(node);
     }
 
 
    //This method cancels an order and updates the ETA of affected orders. It's called when the "cancelOrder" command is processed.
-   static void cancelOrder(int orderId, int currentSystemTime) {
+   void cancelOrder(int orderId, int currentSystemTime) {
+        resultCache.bumpEpoch();
+
         // Search for the order in the AVL tree
         Order orderToCancel = searchOrder(orderId);
     
@@ -358,27 +692,34 @@ public class gatorDelivery {
             // Check if the order has already been delivered
             int eta = calculateETA(orderToCancel);
             if (eta <= currentSystemTime) {
-                writeOutput("Cannot cancel. Order " + orderId + " has already been delivered.");
+                writeOutput(DeliveryEvent.Format.CANNOT_CANCEL, orderId, 0);
                 return;
             }
     
-            // Cancel the order
-            priorityTree.root = deleteNode(priorityTree.root, orderId);
-            writeOutput("Order " + orderId + " has been canceled.");
+            // Cancel the order; in archive mode it's evicted below, once the ETAs are updated
+            if (orderArchive == null) {
+                priorityTree.root = deleteNode(priorityTree.root, orderId);
+            }
+            publish(DeliveryEvent.Type.ORDER_CANCELLED, DeliveryEvent.Format.CANCELED, orderId, currentSystemTime);
     
             // Update the ETAs of all orders with lower priority
             updateETAsWithLowerPriority(orderId, currentSystemTime);
+
+            // Evict the canceled order to the archive
+            if (orderArchive != null) {
+                retire(orderToCancel, eta);
+            }
     
             // Print the updated ETAs
-            printUpdatedETAs(currentSystemTime);
+            reportUpdatedETAs(currentSystemTime);
         } else {
-            writeOutput("Order " + orderId + " not found.");
+            writeOutput(DeliveryEvent.Format.ORDER_NOT_FOUND, orderId, 0);
         }
     }
 
 
     //This method deletes a node (order) from the AVL tree. It's called when an order is canceled or delivered. 
-    static AVLTree.Node deleteNode(AVLTree.Node root, int orderId) {
+    AVLTree.Node deleteNode(AVLTree.Node root, int orderId) {
         if (root == null) return root;
 
         if (orderId < root.order.orderId)
@@ -400,13 +741,71 @@ public class gatorDelivery {
                     root = temp;
             } else {
                 AVLTree.Node temp = minValueNode(root.right);
+                Order replacedOrder = root.order;
                 root.order = temp.order;
+                // ETA nodes referring to this node now belong to another order
+                deliveryWheel.unpark(root);
+                moveReferrers(root, replacedOrder.orderId);
                 root.right = deleteNode(root.right, temp.order.orderId);
             }
         }
 
         if (root == null) return root;
 
+        return rebalance(root);
+    }
+
+    //This method removes the node holding the given order from the AVL tree. It's called in archive mode to evict a retired order; the node is found by priority, then by identity among equal priorities.
+    AVLTree.Node removeOrder(AVLTree.Node root, Order order) {
+        if (root == null) return root;
+
+        double priority = order.calculatePriority();
+        double rootPriority = root.order.calculatePriority();
+        if (root.order != order) {
+            if (priority < rootPriority || (priority == rootPriority && containsOrder(root.left, order)))
+                root.left = removeOrder(root.left, order);
+            else
+                root.right = removeOrder(root.right, order);
+        } else if (root.left == null || root.right == null) {
+            return root.left != null ? root.left : root.right;
+        } else {
+            // Take over the successor's order along with the ETA nodes referring to its node
+            AVLTree.Node successor = minValueNode(root.right);
+            root.order = successor.order;
+            root.referrers = successor.referrers;
+            root.parked = successor.parked;
+            for (ETATree.Node node = root.referrers; node != null; node = node.nextReferrer) {
+                node.avlNode = root;
+            }
+            List<AVLTree.Node> referred = referredNodes.get(root.order.orderId);
+            if (referred != null && referred.contains(successor)) {
+                referred.set(referred.indexOf(successor), root);
+            }
+            root.right = removeMinValueNode(root.right);
+        }
+
+        return rebalance(root);
+    }
+
+    //This method tells whether the subtree holds the given order, only descending where its priority can be.
+    boolean containsOrder(AVLTree.Node node, Order order) {
+        if (node == null) return false;
+        if (node.order == order) return true;
+
+        double priority = order.calculatePriority();
+        double nodePriority = node.order.calculatePriority();
+        return (priority <= nodePriority && containsOrder(node.left, order))
+                || (priority >= nodePriority && containsOrder(node.right, order));
+    }
+
+    AVLTree.Node removeMinValueNode(AVLTree.Node node) {
+        if (node.left == null) return node.right;
+        node.left = removeMinValueNode(node.left);
+        return rebalance(node);
+    }
+
+    //This method updates the height of a node after one of its subtrees changed and rotates it back into balance.
+    AVLTree.Node rebalance(AVLTree.Node root) {
         root.height = Math.max(priorityTree.height(root.left), priorityTree.height(root.right)) + 1;
 
         int balance = getBalance(root);
@@ -432,7 +831,7 @@ public class gatorDelivery {
 
 
     
-    static AVLTree.Node minValueNode(AVLTree.Node node) {
+    AVLTree.Node minValueNode(AVLTree.Node node) {
         AVLTree.Node current = node;
         while (current.left != null)
             current = current.left;
@@ -440,13 +839,13 @@ public class gatorDelivery {
     }
 
 
-    static int getBalance(AVLTree.Node node) {
+    int getBalance(AVLTree.Node node) {
         if (node == null)
             return 0;
         return priorityTree.height(node.left) - priorityTree.height(node.right);
     }
 
-    static AVLTree.Node rightRotate(AVLTree.Node y) {
+    AVLTree.Node rightRotate(AVLTree.Node y) {
         AVLTree.Node x = y.left;
         AVLTree.Node T2 = x.right;
 
@@ -459,7 +858,7 @@ public class gatorDelivery {
         return x;
     }
 
-    static AVLTree.Node leftRotate(AVLTree.Node x) {
+    AVLTree.Node leftRotate(AVLTree.Node x) {
         AVLTree.Node y = x.right;
         AVLTree.Node T2 = y.left;
 
@@ -474,34 +873,37 @@ public class gatorDelivery {
 
 
     // This method updates the ETAs of orders with lower priority after an order is canceled. It's called when an order is canceled to adjust the ETAs of other orders in the ETA tree. 
-    static void updateETAsWithLowerPriority(int orderId, int currentSystemTime) {
-        // Traverse the ETA tree and update ETAs of orders with lower priority
-        etaTree.root = updateETAsWithLowerPriority(etaTree.root, orderId, currentSystemTime);
+    void updateETAsWithLowerPriority(int orderId, int currentSystemTime) {
+        // Find the nodes first, since changing the ETA of a node moves it in the ETA tree
+        List<ETATree.Node> path = new ArrayList<>();
+        updateETAsWithLowerPriority(etaTree.root, orderId, path);
+
+        for (ETATree.Node node : path) {
+            if (node.avlNode.order.orderId == orderId) {
+                setETA(node, Integer.MAX_VALUE); // Mark this node as canceled
+            } else if (node.avlNode.order.orderId < orderId && node.eta > currentSystemTime) {
+                // Update ETA if the order is not canceled
+                setETA(node, currentSystemTime);
+            }
+        }
     }
 
-    //This method is a helper method for updateETAsWithLowerPriority(int orderId, int currentSystemTime). It recursively traverses the ETA tree to update ETAs of orders with lower priority.
-    static ETATree.Node updateETAsWithLowerPriority(ETATree.Node node, int orderId, int currentSystemTime) {
-        if (node == null) return null;
-
-        if (node.avlNode.order.orderId == orderId) {
-            node.eta = Integer.MAX_VALUE; // Mark this node as canceled
-        }
+    //This method is a helper method for updateETAsWithLowerPriority(int orderId, int currentSystemTime). It recursively traverses the ETA tree to collect the nodes on the path of the canceled order.
+    void updateETAsWithLowerPriority(ETATree.Node node, int orderId, List<ETATree.Node> path) {
+        if (node == null) return;
 
+        path.add(node);
         if (node.avlNode.order.orderId < orderId) {
-            // Update ETA if the order is not canceled
-            if (node.eta > currentSystemTime) {
-                node.eta = currentSystemTime;
-            }
-            node.left = updateETAsWithLowerPriority(node.left, orderId, currentSystemTime);
+            updateETAsWithLowerPriority(node.left, orderId, path);
         } else {
-            node.right = updateETAsWithLowerPriority(node.right, orderId, currentSystemTime);
+            updateETAsWithLowerPriority(node.right, orderId, path);
         }
-
-        return node;
     }
 
     // This method updates the delivery time of a specific order and adjusts its ETA. It's called when the "updateTime" command is processed.
-    static void updateTime(int orderId, int currentSystemTime, int newDeliveryTime) {
+    void updateTime(int orderId, int currentSystemTime, int newDeliveryTime) {
+        resultCache.bumpEpoch();
+
         // Retrieve order from AVL tree
         Order order = searchOrder(orderId);
     
@@ -509,7 +911,7 @@ public class gatorDelivery {
             // Check if the order has already been delivered
             int eta = calculateETA(order);
             if (eta <= currentSystemTime) {
-                writeOutput("Cannot update. Order " + orderId + " has already been delivered.");
+                writeOutput(DeliveryEvent.Format.CANNOT_UPDATE, orderId, 0);
                 return;
             }
     
@@ -521,17 +923,17 @@ public class gatorDelivery {
     
             // Update ETA in the ETA tree
             int newETA = calculateETA(order);
-            etaTree.root = updateETATree(etaTree.root, eta, newETA, priorityTree.root);
+            updateETATree(eta, newETA, priorityTree.root);
     
             // Print the updated ETAs
-            printUpdatedETAs(currentSystemTime);
+            reportUpdatedETAs(currentSystemTime);
         } else {
-            writeOutput("Order " + orderId + " not found.");
+            writeOutput(DeliveryEvent.Format.ORDER_NOT_FOUND, orderId, 0);
         }
     }
 
     // This method updates the AVL tree with the new delivery time of an order. It's called when the delivery time of an order is updated.
-    static AVLTree.Node updatePriorityTree(AVLTree.Node node, Order order) {
+    AVLTree.Node updatePriorityTree(AVLTree.Node node, Order order) {
         if (node == null) return null;
 
         if (node.order.orderId == order.orderId) {
@@ -547,21 +949,29 @@ public class gatorDelivery {
     }
 
     //This method updates the ETA tree with the new ETA of an order. It's called when the delivery time of an order is updated. 
-    static ETATree.Node updateETATree(ETATree.Node node, int oldETA, int newETA, AVLTree.Node avlNode) {
-        if (node == null) return null;
+    void updateETATree(int oldETA, int newETA, AVLTree.Node avlNode) {
+        // Find the nodes first, since changing the ETA of a node moves it in the ETA tree
+        List<ETATree.Node> nodes = new ArrayList<>();
+        updateETATree(etaTree.root, oldETA, avlNode, nodes);
+        for (ETATree.Node node : nodes) {
+            setETA(node, newETA);
+        }
+    }
+
+    //This method is a helper method for updateETATree(int oldETA, int newETA, AVLTree.Node avlNode). It recursively collects the nodes of the order with the old ETA.
+    void updateETATree(ETATree.Node node, int oldETA, AVLTree.Node avlNode, List<ETATree.Node> nodes) {
+        if (node == null) return;
 
         if (node.eta == oldETA && node.avlNode == avlNode) {
-            node.eta = newETA;
+            nodes.add(node);
         }
 
-        node.left = updateETATree(node.left, oldETA, newETA, avlNode);
-        node.right = updateETATree(node.right, oldETA, newETA, avlNode);
-
-        return node;
+        updateETATree(node.left, oldETA, avlNode, nodes);
+        updateETATree(node.right, oldETA, avlNode, nodes);
     }
 
     //This method calculates the estimated time of arrival (ETA) for a given order. It's called to determine the ETA of a newly created order and to update the ETA of affected orders.
-    static int calculateETA(Order order) {
+    int calculateETA(Order order) {
         int eta = order.currentSystemTime + order.deliveryTime;
         ETATree.Node node = etaTree.root;
         while (node != null) {
@@ -572,16 +982,20 @@ public class gatorDelivery {
                 node = node.right;
             }
         }
+        if (orderArchive != null) {
+            // Evicted orders of higher priority still hold the order up until they finish
+            eta = Math.max(eta, orderArchive.latestFinishTime(order.calculatePriority()));
+        }
         return eta;
     }
 
     //This method searches for an order with the given order ID in the AVL tree. It's called to retrieve an order when processing commands. 
-    static Order searchOrder(int orderId) {
+    Order searchOrder(int orderId) {
         return searchOrder(priorityTree.root, orderId);
     }
 
     //This method is a helper method for searchOrder(int orderId). It recursively searches for an order with the given order ID in the AVL tree. 
-    static Order searchOrder(AVLTree.Node node, int orderId) {
+    Order searchOrder(AVLTree.Node node, int orderId) {
         if (node == null || node.order.orderId == orderId) {
             if (node != null) {
                 //System.out.println("Debug: Found node with orderId " + node.order.orderId);
@@ -603,23 +1017,60 @@ public class gatorDelivery {
 
 
     //This method prints the updated ETAs of orders after an operation (create, cancel, or update). It's called to print the updated ETAs.
-    static void printUpdatedETAs(int currentSystemTime) {
+    void printUpdatedETAs(int currentSystemTime) {
+        // Find the updated orders, splitting the traversal across cores on large trees
         List<Integer> updatedOrders = new ArrayList<>();
-        printUpdatedETAs(etaTree.root, currentSystemTime, updatedOrders);
+        if (ETATreeScan.isLarge(etaTree.root)) {
+            updatedOrders = ETATreeScan.collect(etaTree.root, node -> node.eta <= currentSystemTime);
+        } else {
+            printUpdatedETAs(etaTree.root, currentSystemTime, updatedOrders);
+        }
 
         if (!updatedOrders.isEmpty()) {
             System.out.print("Updated ETAs: ");
-            for (Integer orderId : updatedOrders) {
-                int eta = calculateETA(searchOrder(orderId));
-                writeOutput("[" + orderId + ": " + eta + "], ");
+
+            // Calculate the ETAs of long lists in parallel; orders that cannot be found are left to the loop below
+            Integer[] etas = new Integer[updatedOrders.size()];
+            if (updatedOrders.size() > PARALLEL_ETA_THRESHOLD) {
+                List<Integer> orderIds = updatedOrders;
+                IntStream.range(0, etas.length).parallel().forEach(i -> {
+                    Order order = searchOrder(orderIds.get(i));
+                    if (order != null) etas[i] = calculateETA(order);
+                });
+            }
+
+            for (int i = 0; i < etas.length; i++) {
+                int orderId = updatedOrders.get(i);
+                int eta = etas[i] != null ? etas[i] : calculateETA(searchOrder(orderId));
+                writeOutput(DeliveryEvent.Format.UPDATED_ETA, orderId, eta);
             }
             
         }
     }
 
 
+    //This method prints the current ETAs of the orders a batch updated, leaving out those that have left the queue since.
+    void printUpdatedETAs(Collection<Integer> orderIds) {
+        List<Integer> updatedOrders = new ArrayList<>();
+        List<Integer> etas = new ArrayList<>();
+        for (int orderId : orderIds) {
+            Order order = searchOrder(orderId);
+            if (order != null) {
+                updatedOrders.add(orderId);
+                etas.add(calculateETA(order));
+            }
+        }
+
+        if (!updatedOrders.isEmpty()) {
+            System.out.print("Updated ETAs: ");
+            for (int i = 0; i < updatedOrders.size(); i++) {
+                writeOutput(DeliveryEvent.Format.UPDATED_ETA, updatedOrders.get(i), etas.get(i));
+            }
+        }
+    }
+
    //This method is a helper method for printUpdatedETAs(int currentSystemTime). It recursively traverses the ETA tree to find orders with updated ETAs.
-    static void printUpdatedETAs(ETATree.Node node, int currentSystemTime, List<Integer> updatedOrders) {
+    void printUpdatedETAs(ETATree.Node node, int currentSystemTime, List<Integer> updatedOrders) {
         if (node != null) {
             if (node.eta <= currentSystemTime) {
                 AVLTree.Node avlNode = node.avlNode;
@@ -629,20 +1080,42 @@ public class gatorDelivery {
             printUpdatedETAs(node.right, currentSystemTime, updatedOrders);
         }
     }
-    static ETATree.Node minValueNode(ETATree.Node node) {
+    ETATree.Node minValueNode(ETATree.Node node) {
         ETATree.Node current = node;
         while (current.left != null)
             current = current.left;
         return current;
     }
 
-    //This method helps in writing the output file.
-    static void writeOutput(String output) {
-        if (writer != null) {
-            writer.println(output);
+    //This method helps in writing the output file. The line is published as a message event.
+    void writeOutput(String output) {
+        DeliveryEvent event = claimEvent(DeliveryEvent.Type.MESSAGE, DeliveryEvent.Format.TEXT, 0, 0);
+        if (event != null) {
+            event.text = output;
+            events.publish();
+        }
+    }
+
+    //This method publishes a message event whose line the listeners format from the order id and time.
+    void writeOutput(DeliveryEvent.Format format, int orderId, int time) {
+        publish(DeliveryEvent.Type.MESSAGE, format, orderId, time);
+    }
+
+    //This method publishes a delivery event, unless events are switched off (e.g. while replaying history).
+    void publish(DeliveryEvent.Type type, DeliveryEvent.Format format, int orderId, int time) {
+        if (claimEvent(type, format, orderId, time) != null) {
+            events.publish();
         }
     }
 
+    //This method claims a delivery event for the caller to complete and publish, or returns null if events are switched off.
+    DeliveryEvent claimEvent(DeliveryEvent.Type type, DeliveryEvent.Format format, int orderId, int time) {
+        if (events == null) return null;
+        DeliveryEvent event = events.claim();
+        event.set(type, format, orderId, time);
+        return event;
+    }
+
 
 }
 